@@ -0,0 +1,60 @@
+package com.project.lox;
+
+import java.util.List;
+
+/**
+ * Times the resolver on a generated script of functions whose bodies nest blocks many scopes deep,
+ * each block declaring locals and reading names from every scope around it. Scanning and parsing
+ * happen once; only resolution is timed, and the best of the runs is reported. Build the classes
+ * first, then run bench/resolve.sh.
+ */
+public class ResolveBenchmark {
+    public static void main(String[] args) {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 22_000;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+
+        String source = generate(lines, depth);
+        ExecutionContext context = new ExecutionContext(new CaptureSink(), System.err);
+        List<Stmt> statements = new Parser(new Scanner(source, context).scanTokens(), context).parse();
+        if (context.hadError)
+            throw new IllegalStateException("generated script does not parse");
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            new Resolver(context).resolve(statements);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        if (context.hadError)
+            throw new IllegalStateException("generated script does not resolve");
+        System.out.printf("%d lines, %d scopes deep: best of %d runs %.1f ms%n", source.split("\n").length,
+                depth, runs, best / 1e6);
+    }
+
+    // Each function opens depth blocks, one inside the other; the block at level d declares v<d>
+    // and w<d> and sums the locals of the three levels around it, plus the parameter.
+    static String generate(int lines, int depth) {
+        StringBuilder out = new StringBuilder();
+        int written = 0;
+        for (int function = 0; written < lines; function++) {
+            out.append("fun f").append(function).append("(p) {\n");
+            written++;
+            for (int d = 0; d < depth; d++) {
+                out.append("{\n");
+                out.append("var v").append(d).append(" = p + ").append(d).append(";\n");
+                out.append("var w").append(d).append(" = v").append(d);
+                for (int outer = Math.max(0, d - 3); outer < d; outer++)
+                    out.append(" + v").append(outer).append(" + w").append(outer);
+                out.append(";\n");
+                written += 3;
+            }
+            out.append("return v").append(depth - 1).append(";\n");
+            for (int d = 0; d < depth; d++)
+                out.append("}\n");
+            out.append("}\n");
+            written += depth + 2;
+        }
+        return out.toString();
+    }
+}
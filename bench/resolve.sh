@@ -0,0 +1,10 @@
+#!/usr/bin/env bash
+# Times the resolver on a generated script nested many scopes deep. Build the classes first:
+#   mvn compile
+# Arguments: lines (default 22000), depth (default 40), runs (default 300).
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+mkdir -p target/bench
+javac -cp target/classes -d target/bench bench/ResolveBenchmark.java
+java -cp target/classes:target/bench com.project.lox.ResolveBenchmark "$@"
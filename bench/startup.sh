@@ -0,0 +1,33 @@
+#!/usr/bin/env bash
+# Compares start-up time of the plain JVM, the JVM with the AppCDS archive and the native
+# executable on a short script. Build the variants first:
+#   mvn -Pappcds package       # target/lox-1.0-SNAPSHOT.jar and target/lox.jsa
+#   mvn -Pnative package       # target/jlox (GraalVM)
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+runs=${RUNS:-20}
+script=${1:-"lox code/test.lox"}
+jar=target/lox-1.0-SNAPSHOT.jar
+
+measure() {
+    local label=$1
+    shift
+    "$@" "$script" > /dev/null
+    local start end
+    start=$(date +%s%N)
+    for _ in $(seq "$runs"); do
+        "$@" "$script" > /dev/null
+    done
+    end=$(date +%s%N)
+    awk -v label="$label" -v ns="$((end - start))" -v runs="$runs" \
+        'BEGIN { printf "%-10s %8.1f ms/run\n", label, ns / runs / 1000000 }'
+}
+
+measure jvm java -cp "$jar" com.project.lox.Lox
+if [ -f target/lox.jsa ]; then
+    measure appcds java -XX:SharedArchiveFile=target/lox.jsa -cp "$jar" com.project.lox.Lox
+fi
+if [ -x target/jlox ]; then
+    measure native target/jlox
+fi
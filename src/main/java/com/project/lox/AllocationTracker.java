@@ -0,0 +1,164 @@
+package com.project.lox;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Tags the objects Lox code allocates (instances, bound methods, closures and block environments)
+ * with the source line that created them, and keeps per-site counts of how many are still
+ * reachable. Each tracked object gets a weak reference; when the collector clears it the site's
+ * live count drops, so a report shows what each line is holding on the heap right now.
+ *
+ * <p>Tracking costs a map lookup and a weak reference per allocation, which is why it is opt-in.
+ * Byte counts are estimated shallow sizes on a 64-bit JVM with compressed references, taken at
+ * allocation time: they include an object's backing map but not what the program stores in it.
+ */
+public final class AllocationTracker implements AllocationTrackerMXBean {
+    // LoxInstance plus its empty ConcurrentHashMap.
+    static final long INSTANCE_BYTES = 24 + 64;
+    // Memory plus its empty HashMap.
+    static final long MEMORY_BYTES = 16 + 48;
+    static final long FUNCTION_BYTES = 24;
+
+    static volatile AllocationTracker instance = null;
+
+    private final Map<String, Site> sites = new ConcurrentHashMap<>();
+    private final Set<Tag> tags = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    private final Map<Stmt.Block, Integer> blockLines = new ConcurrentHashMap<>();
+
+    private AllocationTracker() {
+    }
+
+    /** Turns tracking on and registers the MXBean. Calling it again returns the same instance. */
+    public static synchronized AllocationTracker enable() {
+        if (instance == null) {
+            AllocationTracker tracker = new AllocationTracker();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(tracker,
+                        new ObjectName("com.project.lox:type=Allocations"));
+            } catch (JMException e) {
+                throw new IllegalStateException("Could not register allocation MXBean", e);
+            }
+            instance = tracker;
+        }
+        return instance;
+    }
+
+    private static final class Site {
+        final LongAdder live = new LongAdder();
+        final LongAdder liveBytes = new LongAdder();
+        final LongAdder total = new LongAdder();
+    }
+
+    private static final class Tag extends WeakReference<Object> {
+        final Site site;
+        final long bytes;
+
+        Tag(Object referent, ReferenceQueue<Object> queue, Site site, long bytes) {
+            super(referent, queue);
+            this.site = site;
+            this.bytes = bytes;
+        }
+    }
+
+    void instance(LoxInstance object, LoxClass cls, int line) {
+        record(object, "instance " + cls.name, line, INSTANCE_BYTES);
+    }
+
+    void boundMethod(LoxFunction method, String name, int line) {
+        record(method, "bound method " + name, line, FUNCTION_BYTES + MEMORY_BYTES);
+    }
+
+    void closure(LoxFunction function, Stmt.Function declaration) {
+        record(function, "closure " + declaration.name.lexeme, declaration.name.line, FUNCTION_BYTES);
+    }
+
+    void block(Memory memory, Stmt.Block block) {
+        record(memory, "block", blockLines.computeIfAbsent(block, SourceLines::of), MEMORY_BYTES);
+    }
+
+    private void record(Object object, String kind, int line, long bytes) {
+        expunge();
+        Site site = sites.computeIfAbsent(kind + " (line " + line + ")", key -> new Site());
+        site.total.increment();
+        site.live.increment();
+        site.liveBytes.add(bytes);
+        tags.add(new Tag(object, collected, site, bytes));
+    }
+
+    private void expunge() {
+        Reference<?> reference;
+        while ((reference = collected.poll()) != null) {
+            Tag tag = (Tag) reference;
+            if (tags.remove(tag)) {
+                tag.site.live.decrement();
+                tag.site.liveBytes.add(-tag.bytes);
+            }
+        }
+    }
+
+    private Map<String, Long> totals(ToLongFunction<Site> counter) {
+        expunge();
+        Map<String, Long> totals = new TreeMap<>();
+        sites.forEach((label, site) -> totals.put(label, counter.applyAsLong(site)));
+        return totals;
+    }
+
+    @Override
+    public Map<String, Long> getLiveCounts() {
+        return totals(site -> site.live.sum());
+    }
+
+    @Override
+    public Map<String, Long> getLiveBytes() {
+        return totals(site -> site.liveBytes.sum());
+    }
+
+    @Override
+    public Map<String, Long> getTotalCounts() {
+        return totals(site -> site.total.sum());
+    }
+
+    private static final class Row {
+        final String label;
+        final long live;
+        final long bytes;
+        final long total;
+
+        Row(String label, Site site) {
+            this.label = label;
+            this.live = site.live.sum();
+            this.bytes = site.liveBytes.sum();
+            this.total = site.total.sum();
+        }
+    }
+
+    /** Lists every site, the ones holding the most live bytes first. */
+    @Override
+    public String report() {
+        expunge();
+        List<Row> rows = new ArrayList<>();
+        sites.forEach((label, site) -> rows.add(new Row(label, site)));
+        rows.sort((a, b) -> Long.compare(b.bytes, a.bytes));
+        StringBuilder out = new StringBuilder(
+                String.format("== lox allocations ==%n%12s %12s %12s  %s%n", "live", "live bytes", "total", "site"));
+        for (Row row : rows) {
+            out.append(String.format("%12d %12d %12d  %s%n", row.live, row.bytes, row.total, row.label));
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,18 @@
+package com.project.lox;
+
+import java.util.Map;
+
+/**
+ * Management view of {@link AllocationTracker}, registered as
+ * {@code com.project.lox:type=Allocations}. Keys are allocation sites such as
+ * {@code instance Point (line 12)}.
+ */
+public interface AllocationTrackerMXBean {
+    Map<String, Long> getLiveCounts();
+
+    Map<String, Long> getLiveBytes();
+
+    Map<String, Long> getTotalCounts();
+
+    String report();
+}
@@ -0,0 +1,126 @@
+package com.project.lox;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Hands lines to a dedicated writer thread, so the script never waits on a write call unless it
+ * gets a whole queue ahead of the output. The writer drains everything queued, writes it through
+ * a buffer and flushes whenever the queue runs dry.
+ */
+public final class AsyncSink implements OutputSink {
+    public static final int DEFAULT_QUEUE_SIZE = 1 << 14;
+
+    // Sentinels travel through the queue so they stay ordered with the lines around them.
+    private static final String FLUSH = new String("flush");
+    private static final String CLOSE = new String("close");
+
+    private final BlockingQueue<String> queue;
+    private final Writer out;
+    private final Thread writer;
+    private final Object flushed = new Object();
+    private long requestedFlushes = 0;
+    private long completedFlushes = 0;
+    private volatile IOException failure = null;
+
+    public AsyncSink(Writer out) {
+        this(out, DEFAULT_QUEUE_SIZE);
+    }
+
+    public AsyncSink(Writer out, int queueSize) {
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.out = new BufferedWriter(out, BufferedSink.DEFAULT_BUFFER_SIZE);
+        this.writer = new Thread(this::drain, "lox-output");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void drain() {
+        List<String> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                for (String line : batch) {
+                    if (line == CLOSE) {
+                        out.flush();
+                        completeFlush();
+                        return;
+                    } else if (line == FLUSH) {
+                        out.flush();
+                        completeFlush();
+                    } else {
+                        out.write(line);
+                        out.write('\n');
+                    }
+                }
+                batch.clear();
+                if (queue.isEmpty())
+                    out.flush();
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void completeFlush() {
+        synchronized (flushed) {
+            completedFlushes++;
+            flushed.notifyAll();
+        }
+    }
+
+    private void enqueue(String line) {
+        if (failure != null)
+            throw new IllegalStateException("Output writer failed", failure);
+        try {
+            queue.put(line);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing output", e);
+        }
+    }
+
+    @Override
+    public void println(String line) {
+        enqueue(line);
+    }
+
+    /** Waits until every line printed so far has been written out. */
+    @Override
+    public void flush() {
+        awaitFlush(FLUSH);
+    }
+
+    /** Writes out everything printed so far and stops the writer thread. */
+    @Override
+    public void close() {
+        if (writer.isAlive())
+            awaitFlush(CLOSE);
+    }
+
+    private void awaitFlush(String sentinel) {
+        long ticket;
+        synchronized (flushed) {
+            ticket = ++requestedFlushes;
+        }
+        enqueue(sentinel);
+        synchronized (flushed) {
+            while (completedFlushes < ticket && writer.isAlive()) {
+                try {
+                    flushed.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.project.lox;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects lines in a large buffer and hands them to the underlying writer only when the buffer
+ * fills, on {@link #flush}, or at the latest {@code maxDelayMillis} after a line was printed,
+ * whether or not anything is printed after it. A print-heavy script then costs one write call per
+ * buffer instead of one per line.
+ */
+public final class BufferedSink implements OutputSink {
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 1000;
+
+    // One daemon thread runs the delayed flushes of every sink.
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lox-output-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Writer out;
+    private final long maxDelayMillis;
+    // Whether a delayed flush is pending for lines printed since the last flush.
+    private boolean flushScheduled = false;
+
+    public BufferedSink(Writer out) {
+        this(out, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    public BufferedSink(Writer out, int bufferSize, long maxDelayMillis) {
+        this.out = new BufferedWriter(out, bufferSize);
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    @Override
+    public synchronized void println(String line) {
+        try {
+            out.write(line);
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            FLUSHER.schedule(this::flush, maxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        flushScheduled = false;
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.project.lox;
+
+/**
+ * Keeps everything printed in memory, for embedders that want a script's output as a string.
+ */
+public final class CaptureSink implements OutputSink {
+    private final StringBuilder output = new StringBuilder();
+
+    @Override
+    public synchronized void println(String line) {
+        output.append(line).append('\n');
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public synchronized String toString() {
+        return output.toString();
+    }
+}
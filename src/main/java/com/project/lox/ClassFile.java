@@ -0,0 +1,328 @@
+package com.project.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough of the JVM class file format for the classes {@link Jit} generates: a constant pool,
+ * methods with code and nothing else. Classes are written as version 49 so that the verifier
+ * infers stack map frames itself instead of requiring them in the file.
+ */
+final class ClassFile {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int VERSION = 49;
+
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int DCONST_0 = 0x0e;
+    static final int DCONST_1 = 0x0f;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC2_W = 0x14;
+    static final int ILOAD = 0x15;
+    static final int DLOAD = 0x18;
+    static final int ALOAD = 0x19;
+    static final int DALOAD = 0x31;
+    static final int ISTORE = 0x36;
+    static final int DSTORE = 0x39;
+    static final int ASTORE = 0x3a;
+    static final int POP = 0x57;
+    static final int POP2 = 0x58;
+    static final int DUP = 0x59;
+    static final int DUP2 = 0x5c;
+    static final int DADD = 0x63;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6b;
+    static final int DDIV = 0x6f;
+    static final int DNEG = 0x77;
+    static final int IXOR = 0x82;
+    static final int LCMP = 0x94;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int GOTO = 0xa7;
+    static final int DRETURN = 0xaf;
+    static final int RETURN = 0xb1;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int CHECKCAST = 0xc0;
+
+    private final Bytes pool = new Bytes();
+    private int poolCount = 1;
+    private final Map<String, Integer> entries = new HashMap<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    /** Thrown when generated code does not fit the limits of the format. */
+    static final class TooLarge extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        TooLarge() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final class Bytes {
+        private byte[] data = new byte[256];
+        private int length = 0;
+
+        void u1(int value) {
+            if (length == data.length)
+                data = Arrays.copyOf(data, length * 2);
+            data[length++] = (byte) value;
+        }
+
+        void u2(int value) {
+            if (value < 0 || value > 0xffff)
+                throw new TooLarge();
+            u1(value >> 8);
+            u1(value);
+        }
+
+        void u4(int value) {
+            u2(value >>> 16);
+            u2(value & 0xffff);
+        }
+
+        void u8(long value) {
+            u4((int) (value >>> 32));
+            u4((int) value);
+        }
+
+        void bytes(Bytes other) {
+            for (int i = 0; i < other.length; i++) {
+                u1(other.data[i]);
+            }
+        }
+
+        void bytes(byte[] other) {
+            for (byte b : other) {
+                u1(b);
+            }
+        }
+
+        void patch2(int position, int value) {
+            data[position] = (byte) (value >> 8);
+            data[position + 1] = (byte) value;
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(data, length);
+        }
+    }
+
+    private int entry(String key, int slots, Runnable write) {
+        Integer index = entries.get(key);
+        if (index != null)
+            return index;
+        write.run();
+        index = poolCount;
+        poolCount += slots;
+        entries.put(key, index);
+        return index;
+    }
+
+    int utf8(String value) {
+        return entry("U" + value, 1, () -> {
+            pool.u1(1);
+            byte[] encoded = value.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            pool.u2(encoded.length);
+            pool.bytes(encoded);
+        });
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return entry("C" + internalName, 1, () -> {
+            pool.u1(7);
+            pool.u2(name);
+        });
+    }
+
+    int doubleConstant(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return entry("D" + bits, 2, () -> {
+            pool.u1(6);
+            pool.u8(bits);
+        });
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        int cls = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = entry("N" + name + descriptor, 1, () -> {
+            pool.u1(12);
+            pool.u2(nameIndex);
+            pool.u2(descriptorIndex);
+        });
+        return entry("M" + owner + "." + name + descriptor, 1, () -> {
+            pool.u1(10);
+            pool.u2(cls);
+            pool.u2(nameAndType);
+        });
+    }
+
+    Code method(int access, String name, String descriptor) {
+        return new Code(access, name, descriptor);
+    }
+
+    byte[] toBytes(String name, String superName, String... interfaces) {
+        int thisIndex = classRef(name);
+        int superIndex = classRef(superName);
+        int[] interfaceIndexes = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaceIndexes[i] = classRef(interfaces[i]);
+        }
+        Bytes out = new Bytes();
+        out.u4(0xcafebabe);
+        out.u2(0);
+        out.u2(VERSION);
+        out.u2(poolCount);
+        out.bytes(pool);
+        out.u2(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.u2(thisIndex);
+        out.u2(superIndex);
+        out.u2(interfaces.length);
+        for (int index : interfaceIndexes) {
+            out.u2(index);
+        }
+        out.u2(0);
+        out.u2(methods.size());
+        for (byte[] method : methods) {
+            out.bytes(method);
+        }
+        out.u2(0);
+        return out.toArray();
+    }
+
+    static final class Label {
+        private int position = -1;
+        private final List<Integer> jumps = new ArrayList<>();
+    }
+
+    /**
+     * The body of one method. The operand stack depth is tracked as instructions are added; code
+     * that pushes one value on each of two paths that then meet must take one back with
+     * {@link #adjust} so the depth stays right.
+     */
+    final class Code {
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private final Bytes code = new Bytes();
+        private int stack = 0;
+        private int maxStack = 0;
+
+        private Code(int access, String name, String descriptor) {
+            this.access = access;
+            this.name = utf8(name);
+            this.descriptor = utf8(descriptor);
+        }
+
+        void adjust(int delta) {
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        void op(int opcode, int delta) {
+            code.u1(opcode);
+            adjust(delta);
+        }
+
+        void op1(int opcode, int operand, int delta) {
+            code.u1(opcode);
+            code.u1(operand);
+            adjust(delta);
+        }
+
+        void op2(int opcode, int operand, int delta) {
+            code.u1(opcode);
+            code.u2(operand);
+            adjust(delta);
+        }
+
+        void local(int opcode, int slot, int delta) {
+            if (slot > 0xff)
+                throw new TooLarge();
+            op1(opcode, slot, delta);
+        }
+
+        void pushInt(int value) {
+            if (value <= 5) {
+                op(ICONST_0 + value, 1);
+            } else if (value <= Byte.MAX_VALUE) {
+                op1(BIPUSH, value, 1);
+            } else {
+                op2(SIPUSH, value, 1);
+            }
+        }
+
+        void pushDouble(double value) {
+            if (Double.doubleToRawLongBits(value) == 0L) {
+                op(DCONST_0, 2);
+            } else if (value == 1.0) {
+                op(DCONST_1, 2);
+            } else {
+                op2(LDC2_W, doubleConstant(value), 2);
+            }
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor, int delta) {
+            op2(opcode, methodRef(owner, name, descriptor), delta);
+        }
+
+        void jump(int opcode, Label target, int delta) {
+            int at = code.length;
+            code.u1(opcode);
+            target.jumps.add(at);
+            code.u2(0);
+            adjust(delta);
+            if (target.position >= 0)
+                patch(target, at);
+        }
+
+        void mark(Label label) {
+            label.position = code.length;
+            for (int at : label.jumps) {
+                patch(label, at);
+            }
+        }
+
+        private void patch(Label label, int at) {
+            int offset = label.position - at;
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+                throw new TooLarge();
+            code.patch2(at + 1, offset & 0xffff);
+        }
+
+        void end(int maxLocals) {
+            if (code.length > 0xffff)
+                throw new TooLarge();
+            Bytes method = new Bytes();
+            method.u2(access);
+            method.u2(name);
+            method.u2(descriptor);
+            method.u2(1);
+            method.u2(utf8("Code"));
+            method.u4(12 + code.length);
+            method.u2(maxStack);
+            method.u2(maxLocals);
+            method.u4(code.length);
+            method.bytes(code);
+            method.u2(0);
+            method.u2(0);
+            methods.add(method.toArray());
+        }
+    }
+}
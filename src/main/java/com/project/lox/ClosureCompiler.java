@@ -0,0 +1,587 @@
+package com.project.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The second way of running a script: instead of visiting the tree each time a node runs, every
+ * node is turned once into a Java lambda that calls the lambdas of its children directly. Which
+ * operator a node applies, whether a variable is local or global and how far away it lives are
+ * all decided here, so running a node does no dispatch on its kind. The result behaves exactly
+ * like the {@link Interpreter}'s visitors and uses the same environments, functions and classes,
+ * so the two can be mixed: a function runs in whichever engine its caller's context asks for.
+ *
+ * <p>Compiled for an {@link Instrumentation}, the same lambdas are wrapped in ones that report to
+ * its listener and count into its coverage counters. With coverage every function is compiled,
+ * and only the ones the listener observes report to it; with a listener alone only those are
+ * compiled.
+ */
+final class ClosureCompiler implements Expr.Visitor<ClosureCompiler.Eval>, Stmt.Visitor<ClosureCompiler.Exec> {
+    interface Eval {
+        Object eval(Interpreter interpreter, Memory memory);
+    }
+
+    interface Exec {
+        void exec(Interpreter interpreter, Memory memory);
+    }
+
+    /**
+     * A compiled script: its top-level statements and the body of every function in it. An
+     * instrumented program has null statements when the top level runs uninstrumented, and no
+     * body for functions that do.
+     */
+    static final class Program {
+        final Exec statements;
+        private final Map<Stmt.Function, Exec> bodies;
+        final Instrumentation instrumentation;
+
+        private Program(Exec statements, Map<Stmt.Function, Exec> bodies, Instrumentation instrumentation) {
+            this.statements = statements;
+            this.bodies = bodies;
+            this.instrumentation = instrumentation;
+        }
+
+        Exec body(Stmt.Function function) {
+            return bodies.get(function);
+        }
+    }
+
+    private final ScriptTree script;
+    private final Instrumentation instrumentation;
+    // The listener while compiling code it observes, and null otherwise; counters are null unless
+    // counting coverage.
+    private ExecutionListener listener;
+    private final long[] counters;
+    private final Map<Stmt.Function, Exec> bodies = new HashMap<>();
+
+    private ClosureCompiler(ScriptTree script, Instrumentation instrumentation) {
+        this.script = script;
+        this.instrumentation = instrumentation;
+        this.counters = instrumentation == null || instrumentation.coverage == null ? null
+                : instrumentation.coverage.counters(script);
+    }
+
+    static Program compile(ScriptTree script) {
+        ClosureCompiler compiler = new ClosureCompiler(script, null);
+        Exec statements = compiler.sequence(script.statements);
+        return new Program(statements, compiler.bodies, null);
+    }
+
+    static Program instrument(ScriptTree script, Instrumentation instrumentation) {
+        ClosureCompiler compiler = new ClosureCompiler(script, instrumentation);
+        boolean counted = compiler.counters != null;
+        for (Stmt.Function function : script.functions) {
+            compiler.listener = instrumentation.reports(function.name.lexeme, function.name.line)
+                    ? instrumentation.listener : null;
+            if (counted || compiler.listener != null)
+                compiler.bodies.put(function, compiler.call(function, compiler.sequence(function.body)));
+        }
+        compiler.listener = instrumentation.reports(null, 0) ? instrumentation.listener : null;
+        Exec statements = counted || compiler.listener != null ? compiler.sequence(script.statements) : null;
+        return new Program(statements, compiler.bodies, instrumentation);
+    }
+
+    private Exec call(Stmt.Function function, Exec body) {
+        ExecutionListener listener = this.listener;
+        if (listener == null)
+            return body;
+        String name = function.name.lexeme;
+        int line = function.name.line;
+        return (interpreter, memory) -> {
+            listener.enterCall(name, line);
+            try {
+                body.exec(interpreter, memory);
+            } finally {
+                listener.exitCall(name, line);
+            }
+        };
+    }
+
+    private Exec sequence(List<Stmt> statements) {
+        Exec[] execs = new Exec[statements.size()];
+        for (int i = 0; i < execs.length; i++) {
+            execs[i] = compile(statements.get(i));
+        }
+        if (execs.length == 1)
+            return execs[0];
+        return (interpreter, memory) -> {
+            for (Exec exec : execs) {
+                exec.exec(interpreter, memory);
+            }
+        };
+    }
+
+    private Exec compile(Stmt stmt) {
+        Exec exec = stmt.accept(this);
+        // The lambdas keep the listener the code was compiled for; the field moves on.
+        ExecutionListener listener = this.listener;
+        if (counters != null) {
+            Exec counted = exec;
+            int slot = stmt.slot;
+            exec = (interpreter, memory) -> {
+                counters[slot]++;
+                counted.exec(interpreter, memory);
+            };
+        }
+        if (listener == null)
+            return exec;
+        Exec observed = exec;
+        int line = SourceLines.of(stmt);
+        return (interpreter, memory) -> {
+            listener.enterStatement(line);
+            try {
+                observed.exec(interpreter, memory);
+            } finally {
+                listener.exitStatement(line);
+            }
+        };
+    }
+
+    private Eval compile(Expr expr) {
+        return expr.accept(this);
+    }
+
+    // Instrumented programs compile the bodies they observe up front.
+    private void function(Stmt.Function function) {
+        if (instrumentation == null)
+            bodies.put(function, sequence(function.body));
+    }
+
+    @Override
+    public Exec visitBlockStmt(Stmt.Block stmt) {
+        Exec body = sequence(stmt.statements);
+        if (!stmt.frameReusable) {
+            return (interpreter, memory) -> {
+                Memory block = new Memory(memory);
+                AllocationTracker tracker = AllocationTracker.instance;
+                if (tracker != null)
+                    tracker.block(block, stmt);
+                body.exec(interpreter, block);
+            };
+        }
+        return (interpreter, memory) -> {
+            AllocationTracker tracker = AllocationTracker.instance;
+            if (tracker != null) {
+                Memory block = new Memory(memory);
+                tracker.block(block, stmt);
+                body.exec(interpreter, block);
+                return;
+            }
+            Memory block = interpreter.frames.acquire(memory);
+            try {
+                body.exec(interpreter, block);
+            } finally {
+                interpreter.frames.release(block);
+            }
+        };
+    }
+
+    @Override
+    public Exec visitClassStmt(Stmt.Class stmt) {
+        Eval superclassExpr = stmt.superclass == null ? null : compile(stmt.superclass);
+        for (Stmt.Function method : stmt.methods) {
+            function(method);
+        }
+        return (interpreter, memory) -> {
+            Object superclass = null;
+            if (superclassExpr != null) {
+                superclass = superclassExpr.eval(interpreter, memory);
+                if (!(superclass instanceof LoxClass)) {
+                    throw new RuntimeError(stmt.superclass.name, "Superclass must be a class");
+                }
+            }
+            memory.define(stmt.name.lexeme, null);
+            Memory methodMemory = memory;
+            if (superclass != null) {
+                methodMemory = new Memory(memory);
+                methodMemory.define("super", superclass);
+            }
+            Map<String, LoxFunction> methods = new HashMap<>();
+            for (Stmt.Function method : stmt.methods) {
+                boolean isInitializer = method.name.lexeme.equals("init");
+                methods.put(method.name.lexeme, new LoxFunction(method, methodMemory, isInitializer, script));
+            }
+            memory.assign(stmt.name, new LoxClass(stmt.name.lexeme, stmt.name.line, (LoxClass) superclass, methods));
+        };
+    }
+
+    @Override
+    public Exec visitExpressionStmt(Stmt.Expression stmt) {
+        Eval expression = compile(stmt.expression);
+        return (interpreter, memory) -> expression.eval(interpreter, memory);
+    }
+
+    @Override
+    public Exec visitFunctionStmt(Stmt.Function stmt) {
+        function(stmt);
+        String name = stmt.name.lexeme;
+        return (interpreter, memory) -> {
+            LoxFunction function = new LoxFunction(stmt, memory, false, script);
+            AllocationTracker tracker = AllocationTracker.instance;
+            if (tracker != null)
+                tracker.closure(function, stmt);
+            memory.define(name, function);
+        };
+    }
+
+    @Override
+    public Exec visitIfStmt(Stmt.If stmt) {
+        Eval condition = compile(stmt.condition);
+        Exec thenBranch = compile(stmt.thenBranch);
+        if (counters != null) {
+            Exec elseBranch = stmt.elseBranch == null ? null : compile(stmt.elseBranch);
+            int branch = stmt.branch;
+            return (interpreter, memory) -> {
+                if (Interpreter.isTruthy(condition.eval(interpreter, memory))) {
+                    counters[branch]++;
+                    thenBranch.exec(interpreter, memory);
+                } else {
+                    counters[branch + 1]++;
+                    if (elseBranch != null)
+                        elseBranch.exec(interpreter, memory);
+                }
+            };
+        }
+        if (stmt.elseBranch == null) {
+            return (interpreter, memory) -> {
+                if (Interpreter.isTruthy(condition.eval(interpreter, memory)))
+                    thenBranch.exec(interpreter, memory);
+            };
+        }
+        Exec elseBranch = compile(stmt.elseBranch);
+        return (interpreter, memory) -> {
+            if (Interpreter.isTruthy(condition.eval(interpreter, memory))) {
+                thenBranch.exec(interpreter, memory);
+            } else {
+                elseBranch.exec(interpreter, memory);
+            }
+        };
+    }
+
+    @Override
+    public Exec visitPrintStmt(Stmt.Print stmt) {
+        Eval expression = compile(stmt.expression);
+        return (interpreter, memory) -> interpreter.context.out
+                .println(Interpreter.stringify(expression.eval(interpreter, memory)));
+    }
+
+    @Override
+    public Exec visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) {
+            return (interpreter, memory) -> {
+                throw new Return(null);
+            };
+        }
+        Eval value = compile(stmt.value);
+        return (interpreter, memory) -> {
+            throw new Return(value.eval(interpreter, memory));
+        };
+    }
+
+    @Override
+    public Exec visitVarStmt(Stmt.Var stmt) {
+        String name = stmt.name.lexeme;
+        ExecutionListener listener = this.listener;
+        if (listener != null) {
+            int line = stmt.name.line;
+            Eval initializer = stmt.initializer == null ? (interpreter, memory) -> null : compile(stmt.initializer);
+            return (interpreter, memory) -> {
+                Object value = initializer.eval(interpreter, memory);
+                memory.define(name, value);
+                listener.variableWritten(name, value, line);
+            };
+        }
+        if (stmt.initializer == null)
+            return (interpreter, memory) -> memory.define(name, null);
+        Eval initializer = compile(stmt.initializer);
+        return (interpreter, memory) -> memory.define(name, initializer.eval(interpreter, memory));
+    }
+
+    @Override
+    public Exec visitWhileStmt(Stmt.While stmt) {
+        Eval condition = compile(stmt.condition);
+        Exec body = compile(stmt.body);
+        return (interpreter, memory) -> {
+            while (Interpreter.isTruthy(condition.eval(interpreter, memory))) {
+                interpreter.loopIterations++;
+                body.exec(interpreter, memory);
+            }
+        };
+    }
+
+    @Override
+    public Eval visitAssignExpr(Expr.Assign expr) {
+        Eval value = compile(expr.value);
+        Token name = expr.name;
+        Integer distance = script.locals.get(expr);
+        ExecutionListener listener = this.listener;
+        if (listener != null) {
+            return (interpreter, memory) -> {
+                Object result = value.eval(interpreter, memory);
+                if (distance == null) {
+                    interpreter.globals.assign(name, result);
+                } else {
+                    memory.assignAt(distance, name, result);
+                }
+                listener.variableWritten(name.lexeme, result, name.line);
+                return result;
+            };
+        }
+        if (distance == null) {
+            return (interpreter, memory) -> {
+                Object result = value.eval(interpreter, memory);
+                interpreter.globals.assign(name, result);
+                return result;
+            };
+        }
+        return (interpreter, memory) -> {
+            Object result = value.eval(interpreter, memory);
+            memory.assignAt(distance, name, result);
+            return result;
+        };
+    }
+
+    @Override
+    public Eval visitBinaryExpr(Expr.Binary expr) {
+        Eval left = compile(expr.left);
+        Eval right = compile(expr.right);
+        Token operator = expr.operator;
+        switch (operator.type) {
+            case GREATER:
+                return (interpreter, memory) -> {
+                    Object l = left.eval(interpreter, memory);
+                    Object r = right.eval(interpreter, memory);
+                    checkNumberOperands(operator, l, r);
+                    return (double) l > (double) r;
+                };
+            case GREATER_EQUAL:
+                return (interpreter, memory) -> {
+                    Object l = left.eval(interpreter, memory);
+                    Object r = right.eval(interpreter, memory);
+                    checkNumberOperands(operator, l, r);
+                    return (double) l >= (double) r;
+                };
+            case LESS:
+                return (interpreter, memory) -> {
+                    Object l = left.eval(interpreter, memory);
+                    Object r = right.eval(interpreter, memory);
+                    checkNumberOperands(operator, l, r);
+                    return (double) l < (double) r;
+                };
+            case LESS_EQUAL:
+                return (interpreter, memory) -> {
+                    Object l = left.eval(interpreter, memory);
+                    Object r = right.eval(interpreter, memory);
+                    checkNumberOperands(operator, l, r);
+                    return (double) l <= (double) r;
+                };
+            case EQUAL_EQUAL:
+                return (interpreter, memory) -> {
+                    Object l = left.eval(interpreter, memory);
+                    Object r = right.eval(interpreter, memory);
+                    return interpreter.equal(l, r);
+                };
+            case BANG_EQUAL:
+                return (interpreter, memory) -> {
+                    Object l = left.eval(interpreter, memory);
+                    Object r = right.eval(interpreter, memory);
+                    return !interpreter.equal(l, r);
+                };
+            case MINUS:
+                return (interpreter, memory) -> {
+                    Object l = left.eval(interpreter, memory);
+                    Object r = right.eval(interpreter, memory);
+                    checkNumberOperands(operator, l, r);
+                    return (double) l - (double) r;
+                };
+            case SLASH:
+                return (interpreter, memory) -> {
+                    Object l = left.eval(interpreter, memory);
+                    Object r = right.eval(interpreter, memory);
+                    checkNumberOperands(operator, l, r);
+                    return (double) l / (double) r;
+                };
+            case STAR:
+                return (interpreter, memory) -> {
+                    Object l = left.eval(interpreter, memory);
+                    Object r = right.eval(interpreter, memory);
+                    checkNumberOperands(operator, l, r);
+                    return (double) l * (double) r;
+                };
+            case PLUS:
+                return (interpreter, memory) -> {
+                    Object l = left.eval(interpreter, memory);
+                    Object r = right.eval(interpreter, memory);
+                    if (l instanceof Double && r instanceof Double)
+                        return (double) l + (double) r;
+                    if (l instanceof String && r instanceof String)
+                        return interpreter.concatenate((String) l, (String) r);
+                    throw new RuntimeError(operator, "Operands do not match");
+                };
+            default:
+                return (interpreter, memory) -> {
+                    left.eval(interpreter, memory);
+                    right.eval(interpreter, memory);
+                    return null;
+                };
+        }
+    }
+
+    private static void checkNumberOperands(Token operator, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double)
+            return;
+        throw new RuntimeError(operator, "Operands must be numbers");
+    }
+
+    @Override
+    public Eval visitCallExpr(Expr.Call expr) {
+        Eval callee = compile(expr.callee);
+        Eval[] arguments = new Eval[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = compile(expr.arguments.get(i));
+        }
+        Token paren = expr.paren;
+        LoxCallSite site = expr.site;
+        return (interpreter, memory) -> {
+            Object function = callee.eval(interpreter, memory);
+            List<Object> values = new ArrayList<>(arguments.length);
+            for (Eval argument : arguments) {
+                values.add(argument.eval(interpreter, memory));
+            }
+            interpreter.callLine = paren.line;
+            try {
+                return site.call(function, interpreter, values);
+            } catch (NativeError error) {
+                throw new RuntimeError(paren, error.getMessage());
+            } catch (StackOverflowError error) {
+                interpreter.context.stackOverflowed = true;
+                throw new RuntimeError(paren, "Stack overflow");
+            }
+        };
+    }
+
+    @Override
+    public Eval visitGetExpr(Expr.Get expr) {
+        Eval object = compile(expr.object);
+        Token name = expr.name;
+        return (interpreter, memory) -> {
+            Object value = object.eval(interpreter, memory);
+            if (value instanceof LoxInstance)
+                return ((LoxInstance) value).get(name);
+            if (value instanceof NativeObject)
+                return ((NativeObject) value).get(name);
+            throw new RuntimeError(name, "Only insances have properties");
+        };
+    }
+
+    @Override
+    public Eval visitGroupingExpr(Expr.Grouping expr) {
+        return compile(expr.expression);
+    }
+
+    @Override
+    public Eval visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        return (interpreter, memory) -> value;
+    }
+
+    @Override
+    public Eval visitLogicalExpr(Expr.Logical expr) {
+        Eval left = compile(expr.left);
+        Eval right = compile(expr.right);
+        if (counters != null) {
+            boolean or = expr.operator.type == TokenType.OR;
+            int branch = expr.branch;
+            return (interpreter, memory) -> {
+                Object value = left.eval(interpreter, memory);
+                if (Interpreter.isTruthy(value) == or) {
+                    counters[branch]++;
+                    return value;
+                }
+                counters[branch + 1]++;
+                return right.eval(interpreter, memory);
+            };
+        }
+        if (expr.operator.type == TokenType.OR) {
+            return (interpreter, memory) -> {
+                Object value = left.eval(interpreter, memory);
+                return Interpreter.isTruthy(value) ? value : right.eval(interpreter, memory);
+            };
+        }
+        return (interpreter, memory) -> {
+            Object value = left.eval(interpreter, memory);
+            return Interpreter.isTruthy(value) ? right.eval(interpreter, memory) : value;
+        };
+    }
+
+    @Override
+    public Eval visitSetExpr(Expr.Set expr) {
+        Eval object = compile(expr.object);
+        Eval value = compile(expr.value);
+        Token name = expr.name;
+        return (interpreter, memory) -> {
+            Object instance = object.eval(interpreter, memory);
+            if (!(instance instanceof LoxInstance))
+                throw new RuntimeError(name, "Only instances have fields");
+            Object result = value.eval(interpreter, memory);
+            ((LoxInstance) instance).set(name, result);
+            return result;
+        };
+    }
+
+    @Override
+    public Eval visitSuperExpr(Expr.Super expr) {
+        int distance = script.locals.get(expr);
+        Token method = expr.method;
+        return (interpreter, memory) -> {
+            LoxClass superclass = (LoxClass) memory.getAt(distance, "super");
+            LoxInstance object = (LoxInstance) memory.getAt(distance - 1, "this");
+            LoxFunction function = superclass.findMethod(method.lexeme);
+            if (function == null)
+                throw new RuntimeError(method, "Undefined property '" + method.lexeme + "'");
+            return function.bind(object, method.line);
+        };
+    }
+
+    @Override
+    public Eval visitThisExpr(Expr.This expr) {
+        return variable(expr.keyword, expr);
+    }
+
+    @Override
+    public Eval visitUnaryExpr(Expr.Unary expr) {
+        Eval right = compile(expr.right);
+        Token operator = expr.operator;
+        switch (operator.type) {
+            case MINUS:
+                return (interpreter, memory) -> {
+                    Object value = right.eval(interpreter, memory);
+                    if (!(value instanceof Double))
+                        throw new RuntimeError(operator, "Operand must be a number");
+                    return -(double) value;
+                };
+            case BANG:
+                return (interpreter, memory) -> !Interpreter.isTruthy(right.eval(interpreter, memory));
+            default:
+                return (interpreter, memory) -> {
+                    right.eval(interpreter, memory);
+                    return null;
+                };
+        }
+    }
+
+    @Override
+    public Eval visitVariableExpr(Expr.Variable expr) {
+        return variable(expr.name, expr);
+    }
+
+    private Eval variable(Token name, Expr expr) {
+        Integer distance = script.locals.get(expr);
+        if (distance == null)
+            return (interpreter, memory) -> interpreter.globals.get(name);
+        String lexeme = name.lexeme;
+        return (interpreter, memory) -> memory.getAt(distance, lexeme);
+    }
+}
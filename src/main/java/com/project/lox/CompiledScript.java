@@ -0,0 +1,97 @@
+package com.project.lox;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A scanned, parsed and resolved program, which can be executed by any number of interpreters at
+ * once, each with its own globals. A script keeps itself as a {@link FlatAst} and holds the tree
+ * of nodes that interpreters run only while it is in use: from the start of an execution until
+ * {@link #RETAIN_MILLIS} after the last one finishes. Then the script lets go of the tree, which
+ * is decoded and resolved again, with its compiled code and caches rebuilt, the next time the
+ * script runs. Functions and tasks still running hold on to the tree they came from, so they are
+ * unaffected. A script is serialized in its flat form.
+ *
+ * <p>A script in use costs its tree plus the flat form, about a ninth more than the tree alone;
+ * an idle one costs the flat form, about a ninth of the tree.
+ */
+public final class CompiledScript implements Serializable {
+    private static final long serialVersionUID = 2L;
+
+    static final long RETAIN_MILLIS = 60_000;
+
+    // One daemon thread lets go of the trees of every script once they have been idle long enough.
+    private static final ScheduledExecutorService RELEASER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lox-script-release");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final FlatAst flat;
+    // All guarded by this.
+    private transient ScriptTree tree;
+    private transient int running;
+    private transient long lastUsed;
+    private transient boolean releaseScheduled;
+
+    CompiledScript(List<Stmt> statements, Map<Expr, Integer> locals, List<Stmt.Function> functions, int slots) {
+        this.flat = FlatAst.encode(statements);
+        this.tree = new ScriptTree(this, statements, locals, functions, slots);
+        used();
+    }
+
+    /** The tree, decoded again if the script has let go of it. */
+    synchronized ScriptTree tree() {
+        if (tree == null) {
+            List<Stmt> statements = flat.decode();
+            // The script resolved once already, so nothing can be reported here.
+            Resolver resolver = new Resolver(new ExecutionContext(System.err, System.err));
+            resolver.resolve(statements);
+            tree = new ScriptTree(this, statements, resolver.locals(), resolver.functions(), resolver.slots());
+        }
+        used();
+        return tree;
+    }
+
+    /** Starts an execution, which keeps the tree held until the matching {@link #exit}. */
+    synchronized ScriptTree enter() {
+        running++;
+        return tree();
+    }
+
+    synchronized void exit() {
+        running--;
+        used();
+    }
+
+    /** Lets go of the tree unless an execution is running it; returns whether it did. */
+    synchronized boolean release() {
+        if (running > 0)
+            return false;
+        tree = null;
+        return true;
+    }
+
+    private void used() {
+        lastUsed = System.nanoTime();
+        if (!releaseScheduled) {
+            releaseScheduled = true;
+            RELEASER.schedule(this::releaseIfIdle, RETAIN_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Checks again later while the script is running or was used since this was scheduled.
+    private synchronized void releaseIfIdle() {
+        long idle = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastUsed);
+        if (running == 0 && idle >= RETAIN_MILLIS) {
+            tree = null;
+            releaseScheduled = false;
+        } else {
+            RELEASER.schedule(this::releaseIfIdle, Math.max(1, RETAIN_MILLIS - idle), TimeUnit.MILLISECONDS);
+        }
+    }
+}
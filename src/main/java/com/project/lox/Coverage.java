@@ -0,0 +1,240 @@
+package com.project.lox;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts how often each statement, and each way of every if and every and/or, runs in the scripts
+ * of the engines it is attached to, and reports the counts in lcov's tracefile format. The resolver
+ * numbers statements and branches as it goes, so a script's counts are a single array indexed by
+ * those numbers and counting is one increment per statement. Increments are not atomic: scripts
+ * run on several threads at once may lose some counts, but a line that ran is never reported as
+ * not having run.
+ */
+public final class Coverage {
+    private final Map<CompiledScript, long[]> counters = new ConcurrentHashMap<>();
+
+    long[] counters(ScriptTree tree) {
+        return counters.computeIfAbsent(tree.script, s -> new long[tree.slots]);
+    }
+
+    /**
+     * Writes the counts for {@code script} as an lcov record for {@code sourceFile}. A script that
+     * has not run under this coverage is reported with every line at zero.
+     */
+    public void write(CompiledScript script, String sourceFile, Writer out) throws IOException {
+        ScriptTree tree = script.tree();
+        Report report = new Report(counters.getOrDefault(script, new long[tree.slots]));
+        report.walk(tree.statements);
+
+        out.write("TN:\nSF:" + sourceFile + "\n");
+        int hit = 0;
+        for (Branch branch : report.branches) {
+            out.write("BRDA:" + branch.line + "," + branch.slot + "," + branch.taken + ","
+                    + (branch.count < 0 ? "-" : Long.toString(branch.count)) + "\n");
+            if (branch.count > 0)
+                hit++;
+        }
+        out.write("BRF:" + report.branches.size() + "\nBRH:" + hit + "\n");
+        hit = 0;
+        for (Map.Entry<Integer, Long> line : report.lines.entrySet()) {
+            out.write("DA:" + line.getKey() + "," + line.getValue() + "\n");
+            if (line.getValue() > 0)
+                hit++;
+        }
+        out.write("LF:" + report.lines.size() + "\nLH:" + hit + "\nend_of_record\n");
+    }
+
+    private static final class Branch {
+        final int line;
+        final int slot;
+        final int taken;
+        // -1 when the branch point itself never ran.
+        final long count;
+
+        Branch(int line, int slot, int taken, long count) {
+            this.line = line;
+            this.slot = slot;
+            this.taken = taken;
+            this.count = count;
+        }
+    }
+
+    // Collects each line's count, the most any statement starting on it ran, and every branch.
+    private static final class Report implements Stmt.Visitor<Void>, Expr.Visitor<Void> {
+        private final long[] counters;
+        final Map<Integer, Long> lines = new TreeMap<>();
+        final List<Branch> branches = new ArrayList<>();
+
+        Report(long[] counters) {
+            this.counters = counters;
+        }
+
+        void walk(List<Stmt> statements) {
+            for (Stmt statement : statements) {
+                statement(statement);
+            }
+        }
+
+        private void statement(Stmt statement) {
+            int line = SourceLines.of(statement);
+            if (line != 0)
+                lines.merge(line, counters[statement.slot], Math::max);
+            statement.accept(this);
+        }
+
+        private void expression(Expr expr) {
+            if (expr != null)
+                expr.accept(this);
+        }
+
+        private void branch(int line, int slot, long reached) {
+            branches.add(new Branch(line, slot, 0, reached == 0 ? -1 : counters[slot]));
+            branches.add(new Branch(line, slot, 1, reached == 0 ? -1 : counters[slot + 1]));
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt) {
+            walk(stmt.body);
+            return null;
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            walk(stmt.statements);
+            return null;
+        }
+
+        // Methods are not statements of their own, so only their bodies are counted.
+        @Override
+        public Void visitClassStmt(Stmt.Class stmt) {
+            for (Stmt.Function method : stmt.methods) {
+                walk(method.body);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            expression(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            expression(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            expression(stmt.initializer);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt) {
+            branch(SourceLines.of(stmt), stmt.branch, counters[stmt.slot]);
+            expression(stmt.condition);
+            statement(stmt.thenBranch);
+            if (stmt.elseBranch != null)
+                statement(stmt.elseBranch);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            expression(stmt.condition);
+            statement(stmt.body);
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt) {
+            expression(stmt.value);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            expression(expr.left);
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            expression(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            expression(expr.value);
+            return null;
+        }
+
+        // Neither way counts when the expression never ran, which the two counts alone show.
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            expression(expr.left);
+            long reached = counters[expr.branch] + counters[expr.branch + 1];
+            branch(expr.operator.line, expr.branch, reached);
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            expression(expr.callee);
+            for (Expr argument : expr.arguments) {
+                expression(argument);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitGetExpr(Expr.Get expr) {
+            expression(expr.object);
+            return null;
+        }
+
+        @Override
+        public Void visitSetExpr(Expr.Set expr) {
+            expression(expr.object);
+            expression(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitThisExpr(Expr.This expr) {
+            return null;
+        }
+
+        @Override
+        public Void visitSuperExpr(Expr.Super expr) {
+            return null;
+        }
+    }
+}
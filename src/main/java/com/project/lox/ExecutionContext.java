@@ -0,0 +1,63 @@
+package com.project.lox;
+
+import java.io.PrintStream;
+
+/**
+ * Everything a single script execution writes to: its output sink, its error stream and whether it
+ * has reported an error. Nothing here is shared between executions, so scripts running on
+ * different threads with different contexts never see each other's state.
+ */
+public class ExecutionContext {
+    final OutputSink out;
+    private final PrintStream err;
+    boolean hadError = false;
+    boolean hadRuntimeError = false;
+    Profiler profiler = null;
+    Memoizer memoizer = null;
+    boolean jit = true;
+    // Calls plus loop iterations after which a function is compiled, see Jit.
+    int jitThreshold = Jit.THRESHOLD;
+    // Run scripts as closures (see ClosureCompiler) instead of walking the tree.
+    boolean closures = false;
+    // Intern every string a script builds, so equal strings are one object; see Interpreter.equal.
+    boolean internStrings = false;
+    // Null unless a listener is attached; then the functions it observes run instrumented.
+    Instrumentation instrumentation = null;
+    // Stack of the threads that spawned tasks and the parallel natives run on, in bytes; 0 leaves
+    // it to the JVM.
+    long stackSize = 0;
+    // Set once a call has overflowed the stack, which may have cut short an update to an
+    // environment, a cache or a profiler stack; nothing run in this context can be trusted after.
+    volatile boolean stackOverflowed = false;
+
+    public ExecutionContext(OutputSink out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    public ExecutionContext(PrintStream out, PrintStream err) {
+        this(new PrintStreamSink(out), err);
+    }
+
+    void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    void error(Token token, String message) {
+        if (token.type == TokenType.EOF) {
+            report(token.line, " at end", message);
+        } else {
+            report(token.line, " at '" + token.lexeme + "'", message);
+        }
+    }
+
+    private void report(int line, String where, String message) {
+        err.println("[line " + line + "] Error" + where + ": " + message);
+        hadError = true;
+    }
+
+    void runtimeError(RuntimeError error) {
+        out.println("[line " + error.token.line + "] " + error.getMessage());
+        hadRuntimeError = true;
+    }
+}
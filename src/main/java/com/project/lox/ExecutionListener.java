@@ -0,0 +1,42 @@
+package com.project.lox;
+
+/**
+ * Receives events from a running script, for tracers and debuggers. A listener is asked once per
+ * script which functions it observes; only those, and the top level of the script if it asks
+ * for it, run instrumented, while everything else runs exactly as it would with no listener
+ * attached. Executions with a listener never compile functions to bytecode, so observed functions
+ * called from compiled code are not missed. Events arrive on the thread running the code, which
+ * for tasks started with {@code spawn} is not the thread that started the script.
+ *
+ * <p>Values are what Lox sees: numbers are {@link Double}s, strings {@link String}s and nil is
+ * {@code null}.
+ */
+public interface ExecutionListener {
+    /**
+     * Whether to report what happens in the body of the function or method called {@code name}
+     * declared on {@code line}. The top level of a script is asked with a null name and line 0.
+     */
+    default boolean observes(String name, int line) {
+        return true;
+    }
+
+    /** Called before an observed statement starts, with the line it starts on. */
+    default void enterStatement(int line) {
+    }
+
+    /** Called when an observed statement finishes, including by returning or failing. */
+    default void exitStatement(int line) {
+    }
+
+    /** Called when an observed function starts, after its arguments are bound. */
+    default void enterCall(String name, int line) {
+    }
+
+    /** Called when an observed function finishes, including by failing. */
+    default void exitCall(String name, int line) {
+    }
+
+    /** Called after observed code declares or assigns a variable. */
+    default void variableWritten(String name, Object value, int line) {
+    }
+}
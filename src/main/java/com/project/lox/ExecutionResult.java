@@ -0,0 +1,15 @@
+package com.project.lox;
+
+/**
+ * Outcome of running one script through a {@link LoxEngine}.
+ */
+public enum ExecutionResult {
+    OK(0), COMPILE_ERROR(2), RUNTIME_ERROR(3);
+
+    /** The exit status the command line interpreter uses for this outcome. */
+    public final int exitCode;
+
+    ExecutionResult(int exitCode) {
+        this.exitCode = exitCode;
+    }
+}
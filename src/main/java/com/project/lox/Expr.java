@@ -120,6 +120,8 @@ abstract class Expr {
         final Expr left;
         final Token operator;
         final Expr right;
+        // Filled in by the resolver.
+        int branch;
 
         Logical(Expr left, Token operator, Expr right) {
             this.left = left;
@@ -138,6 +140,8 @@ abstract class Expr {
         final Expr callee;
         final Token paren;
         final List<Expr> arguments;
+        // Filled in by the resolver.
+        LoxCallSite site;
 
         Call(Expr callee, Token paren, List<Expr> arguments) {
             this.callee = callee;
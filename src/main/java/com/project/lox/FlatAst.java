@@ -0,0 +1,457 @@
+package com.project.lox;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A parsed script stored as a flat array of ints instead of a graph of nodes and tokens. Every
+ * node is written in prefix order as its kind followed by its fields: child nodes inline, counts
+ * before lists, and each token as one int holding its type and the index of its lexeme in a
+ * constant pool shared with literal values. Lines live in a separate table of (offset, line) pairs
+ * with an entry only where the line changes, so a script costs a few ints per node however long
+ * its names are.
+ */
+final class FlatAst implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int BINARY = 0;
+    private static final int GROUPING = 1;
+    private static final int LITERAL = 2;
+    private static final int UNARY = 3;
+    private static final int VARIABLE = 4;
+    private static final int ASSIGN = 5;
+    private static final int LOGICAL = 6;
+    private static final int CALL = 7;
+    private static final int GET = 8;
+    private static final int SET = 9;
+    private static final int THIS = 10;
+    private static final int SUPER = 11;
+    private static final int FUNCTION = 12;
+    private static final int BLOCK = 13;
+    private static final int CLASS = 14;
+    private static final int EXPRESSION = 15;
+    private static final int PRINT = 16;
+    private static final int VAR = 17;
+    private static final int IF = 18;
+    private static final int WHILE = 19;
+    private static final int RETURN = 20;
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    // A token is its type in the low byte and its lexeme's constant above it.
+    private static final int TYPE_BITS = 8;
+
+    private final int[] code;
+    private final Object[] constants;
+    private final int[] lines;
+
+    private FlatAst(int[] code, Object[] constants, int[] lines) {
+        this.code = code;
+        this.constants = constants;
+        this.lines = lines;
+    }
+
+    static FlatAst encode(List<Stmt> statements) {
+        Encoder encoder = new Encoder();
+        encoder.statements(statements);
+        return encoder.finish();
+    }
+
+    List<Stmt> decode() {
+        return new Decoder().statements();
+    }
+
+    // Names and string literals are interned by the scanner; keep them so when read back.
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        for (int i = 0; i < constants.length; i++) {
+            if (constants[i] instanceof String)
+                constants[i] = ((String) constants[i]).intern();
+        }
+    }
+
+    private static final class Encoder implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        private int[] code = new int[64];
+        private int length = 0;
+        private final List<Object> constants = new ArrayList<>();
+        private final Map<Object, Integer> indexes = new HashMap<>();
+        private int[] lines = new int[16];
+        private int lineCount = 0;
+
+        FlatAst finish() {
+            return new FlatAst(Arrays.copyOf(code, length), constants.toArray(), Arrays.copyOf(lines, lineCount));
+        }
+
+        private void write(int value) {
+            if (length == code.length)
+                code = Arrays.copyOf(code, length * 2);
+            code[length++] = value;
+        }
+
+        private int constant(Object value) {
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = constants.size();
+                constants.add(value);
+                indexes.put(value, index);
+            }
+            return index;
+        }
+
+        private void token(Token token) {
+            if (lineCount == 0 || lines[lineCount - 1] != token.line) {
+                if (lineCount == lines.length)
+                    lines = Arrays.copyOf(lines, lineCount * 2);
+                lines[lineCount++] = length;
+                lines[lineCount++] = token.line;
+            }
+            write(constant(token.lexeme) << TYPE_BITS | token.type.ordinal());
+        }
+
+        void statements(List<Stmt> statements) {
+            write(statements.size());
+            for (Stmt statement : statements) {
+                statement.accept(this);
+            }
+        }
+
+        private void expressions(List<Expr> expressions) {
+            write(expressions.size());
+            for (Expr expression : expressions) {
+                expression.accept(this);
+            }
+        }
+
+        private void optional(Expr expression) {
+            write(expression == null ? 0 : 1);
+            if (expression != null)
+                expression.accept(this);
+        }
+
+        private void node(int kind, Expr... children) {
+            write(kind);
+            for (Expr child : children) {
+                child.accept(this);
+            }
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            write(BINARY);
+            token(expr.operator);
+            expr.left.accept(this);
+            expr.right.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            node(GROUPING, expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            write(LITERAL);
+            write(constant(expr.value));
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            write(UNARY);
+            token(expr.operator);
+            expr.right.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            write(VARIABLE);
+            token(expr.name);
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            write(ASSIGN);
+            token(expr.name);
+            expr.value.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            write(LOGICAL);
+            token(expr.operator);
+            expr.left.accept(this);
+            expr.right.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            node(CALL, expr.callee);
+            token(expr.paren);
+            expressions(expr.arguments);
+            return null;
+        }
+
+        @Override
+        public Void visitGetExpr(Expr.Get expr) {
+            node(GET, expr.object);
+            token(expr.name);
+            return null;
+        }
+
+        @Override
+        public Void visitSetExpr(Expr.Set expr) {
+            node(SET, expr.object);
+            token(expr.name);
+            expr.value.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitThisExpr(Expr.This expr) {
+            write(THIS);
+            token(expr.keyword);
+            return null;
+        }
+
+        @Override
+        public Void visitSuperExpr(Expr.Super expr) {
+            write(SUPER);
+            token(expr.keyword);
+            token(expr.method);
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt) {
+            write(FUNCTION);
+            token(stmt.name);
+            write(stmt.params.size());
+            for (Token param : stmt.params) {
+                token(param);
+            }
+            statements(stmt.body);
+            return null;
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            write(BLOCK);
+            statements(stmt.statements);
+            return null;
+        }
+
+        @Override
+        public Void visitClassStmt(Stmt.Class stmt) {
+            write(CLASS);
+            token(stmt.name);
+            optional(stmt.superclass);
+            write(stmt.methods.size());
+            for (Stmt.Function method : stmt.methods) {
+                method.accept(this);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            node(EXPRESSION, stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            node(PRINT, stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            write(VAR);
+            token(stmt.name);
+            optional(stmt.initializer);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt) {
+            node(IF, stmt.condition);
+            stmt.thenBranch.accept(this);
+            write(stmt.elseBranch == null ? 0 : 1);
+            if (stmt.elseBranch != null)
+                stmt.elseBranch.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            node(WHILE, stmt.condition);
+            stmt.body.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt) {
+            write(RETURN);
+            token(stmt.keyword);
+            optional(stmt.value);
+            return null;
+        }
+    }
+
+    private final class Decoder {
+        private int position = 0;
+        private int nextLine = 0;
+        private int line = 0;
+
+        private int read() {
+            return code[position++];
+        }
+
+        private Token token() {
+            while (nextLine < lines.length && lines[nextLine] <= position) {
+                line = lines[nextLine + 1];
+                nextLine += 2;
+            }
+            int token = read();
+            String lexeme = (String) constants[token >>> TYPE_BITS];
+            return new Token(TOKEN_TYPES[token & ((1 << TYPE_BITS) - 1)], lexeme, null, line);
+        }
+
+        List<Stmt> statements() {
+            int count = read();
+            List<Stmt> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                statements.add(statement());
+            }
+            return statements;
+        }
+
+        private List<Expr> expressions() {
+            int count = read();
+            List<Expr> expressions = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                expressions.add(expression());
+            }
+            return expressions;
+        }
+
+        private Expr optional() {
+            return read() == 0 ? null : expression();
+        }
+
+        private Expr expression() {
+            switch (read()) {
+                case BINARY: {
+                    Token operator = token();
+                    Expr left = expression();
+                    return new Expr.Binary(left, operator, expression());
+                }
+                case GROUPING:
+                    return new Expr.Grouping(expression());
+                case LITERAL:
+                    return new Expr.Literal(constants[read()]);
+                case UNARY: {
+                    Token operator = token();
+                    return new Expr.Unary(operator, expression());
+                }
+                case VARIABLE:
+                    return new Expr.Variable(token());
+                case ASSIGN: {
+                    Token name = token();
+                    return new Expr.Assign(name, expression());
+                }
+                case LOGICAL: {
+                    Token operator = token();
+                    Expr left = expression();
+                    return new Expr.Logical(left, operator, expression());
+                }
+                case CALL: {
+                    Expr callee = expression();
+                    Token paren = token();
+                    return new Expr.Call(callee, paren, expressions());
+                }
+                case GET: {
+                    Expr object = expression();
+                    return new Expr.Get(object, token());
+                }
+                case SET: {
+                    Expr object = expression();
+                    Token name = token();
+                    return new Expr.Set(object, name, expression());
+                }
+                case THIS:
+                    return new Expr.This(token());
+                case SUPER: {
+                    Token keyword = token();
+                    return new Expr.Super(keyword, token());
+                }
+                default:
+                    throw new IllegalStateException("Not an expression at " + (position - 1));
+            }
+        }
+
+        private Stmt.Function function() {
+            Token name = token();
+            int count = read();
+            List<Token> params = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                params.add(token());
+            }
+            return new Stmt.Function(name, params, statements());
+        }
+
+        private Stmt statement() {
+            switch (read()) {
+                case FUNCTION:
+                    return function();
+                case BLOCK:
+                    return new Stmt.Block(statements());
+                case CLASS: {
+                    Token name = token();
+                    Expr.Variable superclass = (Expr.Variable) optional();
+                    int count = read();
+                    List<Stmt.Function> methods = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        read();
+                        methods.add(function());
+                    }
+                    return new Stmt.Class(name, superclass, methods);
+                }
+                case EXPRESSION:
+                    return new Stmt.Expression(expression());
+                case PRINT:
+                    return new Stmt.Print(expression());
+                case VAR: {
+                    Token name = token();
+                    return new Stmt.Var(name, optional());
+                }
+                case IF: {
+                    Expr condition = expression();
+                    Stmt thenBranch = statement();
+                    return new Stmt.If(condition, thenBranch, read() == 0 ? null : statement());
+                }
+                case WHILE: {
+                    Expr condition = expression();
+                    return new Stmt.While(condition, statement());
+                }
+                case RETURN: {
+                    Token keyword = token();
+                    return new Stmt.Return(keyword, optional());
+                }
+                default:
+                    throw new IllegalStateException("Not a statement at " + (position - 1));
+            }
+        }
+    }
+}
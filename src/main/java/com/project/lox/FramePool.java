@@ -0,0 +1,29 @@
+package com.project.lox;
+
+/**
+ * Environments of blocks and calls that no closure can capture (see the resolver). One interpreter
+ * enters and leaves them in strict last-in, first-out order, so when a block or call finishes its
+ * environment is cleared and handed to the next one instead of being left for the collector.
+ */
+final class FramePool {
+    private static final int CAPACITY = 64;
+
+    private final Memory[] frames = new Memory[CAPACITY];
+    private int size = 0;
+
+    Memory acquire(Memory enclosing) {
+        if (size == 0)
+            return new Memory(enclosing);
+        Memory frame = frames[--size];
+        frames[size] = null;
+        frame.reuse(enclosing);
+        return frame;
+    }
+
+    void release(Memory frame) {
+        if (size < CAPACITY) {
+            frame.reuse(null);
+            frames[size++] = frame;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.project.lox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.InvalidObjectException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The globals an interpreter is left with after running a script, serialized so that later
+ * interpreters can start from them instead of running the script again. Classes with their method
+ * tables, functions with their closures and declarations, instances, maps and lists are captured.
+ * Built-in functions are recorded by name and bound to the restoring interpreter's own; tasks and
+ * channels cannot be captured. Every restore builds a fresh copy, so interpreters started from the
+ * same snapshot never share state. Snapshots are not meant to outlive the interpreter version
+ * that wrote them; take a new one after upgrading.
+ */
+public final class HeapSnapshot {
+    // The capturing interpreter's globals, wherever a closure refers to them.
+    private enum Marker {
+        GLOBALS
+    }
+
+    private static final class NativeRef implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String name;
+
+        NativeRef(String name) {
+            this.name = name;
+        }
+    }
+
+    private final byte[] bytes;
+
+    private HeapSnapshot(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    static HeapSnapshot capture(Memory globals) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new SnapshotOutput(bytes, globals)) {
+            out.writeObject(new HashMap<>(globals.bindings()));
+        }
+        return new HeapSnapshot(bytes.toByteArray());
+    }
+
+    /** Defines the captured globals in {@code globals}, which must not have run anything yet. */
+    @SuppressWarnings("unchecked")
+    void restore(Memory globals) throws IOException {
+        Map<String, Object> values;
+        try (ObjectInputStream in = new SnapshotInput(new ByteArrayInputStream(bytes), globals)) {
+            values = (Map<String, Object>) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new InvalidClassException(e.getMessage());
+        }
+        values.forEach(globals::define);
+    }
+
+    public static HeapSnapshot read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, count);
+        }
+        return new HeapSnapshot(bytes.toByteArray());
+    }
+
+    public void write(OutputStream out) throws IOException {
+        out.write(bytes);
+    }
+
+    private static final class SnapshotOutput extends ObjectOutputStream {
+        private final Memory globals;
+
+        SnapshotOutput(OutputStream out, Memory globals) throws IOException {
+            super(out);
+            this.globals = globals;
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            if (obj == globals)
+                return Marker.GLOBALS;
+            if (obj instanceof NativeFunction) {
+                NativeFunction function = (NativeFunction) obj;
+                if (globals.bindings().get(function.name) != function)
+                    throw new NotSerializableException("native function '" + function.name + "' is not a global");
+                return new NativeRef(function.name);
+            }
+            return obj;
+        }
+    }
+
+    private static final class SnapshotInput extends ObjectInputStream {
+        private final Memory globals;
+
+        SnapshotInput(InputStream in, Memory globals) throws IOException {
+            super(in);
+            this.globals = globals;
+            enableResolveObject(true);
+        }
+
+        // Exactly the classes a snapshot is made of: the interpreter's own, the values and
+        // collections they hold, and the locks a ConcurrentHashMap writes for compatibility.
+        // Anything else is refused rather than instantiated.
+        private static final Set<String> ALLOWED = new HashSet<>(Arrays.asList(
+                CompiledScript.class.getName(), FlatAst.class.getName(), LoxClass.class.getName(),
+                LoxFunction.class.getName(), LoxInstance.class.getName(), LoxList.class.getName(),
+                LoxMap.class.getName(), Memory.class.getName(), Marker.class.getName(), NativeRef.class.getName(),
+                "java.lang.Boolean", "java.lang.Double", "java.lang.Enum", "java.lang.Number", "java.lang.String",
+                "java.util.ArrayList", "java.util.HashMap", "java.util.concurrent.ConcurrentHashMap",
+                "java.util.concurrent.ConcurrentHashMap$Segment", "java.util.concurrent.locks.ReentrantLock",
+                "java.util.concurrent.locks.ReentrantLock$Sync", "java.util.concurrent.locks.ReentrantLock$NonfairSync",
+                "java.util.concurrent.locks.AbstractQueuedSynchronizer",
+                "java.util.concurrent.locks.AbstractOwnableSynchronizer",
+                "[I", "[Ljava.lang.Object;", "[Ljava.util.concurrent.ConcurrentHashMap$Segment;"));
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!ALLOWED.contains(desc.getName()))
+                throw new InvalidClassException(desc.getName(), "not allowed in a snapshot");
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws InvalidClassException {
+            throw new InvalidClassException("proxy", "not allowed in a snapshot");
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) throws IOException {
+            if (obj == Marker.GLOBALS)
+                return globals;
+            // Strings come back as new copies; intern them like the ones they were saved from.
+            if (obj instanceof String)
+                return ((String) obj).intern();
+            if (obj instanceof NativeRef) {
+                String name = ((NativeRef) obj).name;
+                Object function = globals.bindings().get(name);
+                if (!(function instanceof NativeFunction))
+                    throw new InvalidObjectException("no native function '" + name + "'");
+                return function;
+            }
+            return obj;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.project.lox;
+
+/**
+ * What observes an execution: a listener, a coverage collector or both. Code runs instrumented
+ * when an execution has one (see {@link ScriptTree#instrumented}); engines keep one for as long as
+ * the same listener and collector are attached, so scripts are instrumented once rather than on
+ * every run.
+ */
+final class Instrumentation {
+    final ExecutionListener listener;
+    final Coverage coverage;
+
+    private Instrumentation(ExecutionListener listener, Coverage coverage) {
+        this.listener = listener;
+        this.coverage = coverage;
+    }
+
+    /** Returns null when there is nothing to attach. */
+    static Instrumentation of(ExecutionListener listener, Coverage coverage) {
+        return listener == null && coverage == null ? null : new Instrumentation(listener, coverage);
+    }
+
+    /**
+     * Whether the listener hears about the function called {@code name} declared on {@code line}.
+     * Coverage counts every function whether or not the listener observes it, so a function can
+     * run instrumented without reporting to the listener.
+     */
+    boolean reports(String name, int line) {
+        return listener != null && listener.observes(name, line);
+    }
+}
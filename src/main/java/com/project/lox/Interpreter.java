@@ -28,37 +28,105 @@ import com.project.lox.Stmt.Var;
 import com.project.lox.Stmt.While;
 
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-    Memory globals = new Memory();
-    private Memory memory = globals;
-    private final Map<Expr, Integer> locals = new HashMap<>();
-
-    Interpreter() {
-        globals.define("clock", new LoxCallable() {
-
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                return (double) System.currentTimeMillis() / 1000.0;
+    final ExecutionContext context;
+    final Memory globals;
+    private Memory memory;
+    private ScriptTree script;
+    final ShadowStack shadowStack;
+    final FramePool frames = new FramePool();
+    // Time spent in Lox callees of the function currently running, so metrics can report self time.
+    long calleeNanos = 0;
+    // Counts every loop iteration, so that functions whose loops run hot get compiled, see Jit.
+    long loopIterations = 0;
+    // Line of the call expression being dispatched, for natives that attribute work to a call site.
+    int callLine = 0;
+
+    Interpreter(ExecutionContext context) {
+        this.context = context;
+        this.globals = new Memory();
+        this.memory = globals;
+        this.shadowStack = context.profiler == null ? null : context.profiler.newStack();
+        globals.define("clock", new NativeFunction("clock", 0,
+                (interpreter, arguments) -> (double) System.currentTimeMillis() / 1000.0));
+        globals.define("Map", new NativeFunction("Map", 0, (interpreter, arguments) -> new LoxMap()));
+        globals.define("spawn", new NativeFunction("spawn", 1, (interpreter, arguments) -> {
+            return new LoxTask(interpreter, callable(arguments.get(0), 0));
+        }));
+        globals.define("Channel", new NativeFunction("Channel", 1, (interpreter, arguments) -> {
+            Object capacity = arguments.get(0);
+            if (!(capacity instanceof Double) || (double) capacity < 0 || (double) capacity % 1 != 0) {
+                throw new NativeError("Channel capacity must be a non-negative integer");
             }
-
-            @Override
-            public int arity() {
-                return 0;
-            }
-
-            @Override
-            public String toString() {
-                return "<native function>";
-            }
-        });
+            return new LoxChannel((int) (double) capacity);
+        }));
+        globals.define("List", new NativeFunction("List", 0, (interpreter, arguments) -> new LoxList()));
+        globals.define("parallelMap", new NativeFunction("parallelMap", 2,
+                (interpreter, arguments) -> LoxParallel.map(interpreter, list(arguments.get(0)),
+                        callable(arguments.get(1), 1))));
+        globals.define("parallelFilter", new NativeFunction("parallelFilter", 2,
+                (interpreter, arguments) -> LoxParallel.filter(interpreter, list(arguments.get(0)),
+                        callable(arguments.get(1), 1))));
+        globals.define("parallelReduce", new NativeFunction("parallelReduce", 3,
+                (interpreter, arguments) -> LoxParallel.reduce(interpreter, list(arguments.get(0)),
+                        callable(arguments.get(1), 2), arguments.get(2))));
+    }
+
+    /**
+     * Creates an interpreter for another thread: it shares the globals and context of
+     * {@code parent} but has its own frame stack.
+     */
+    Interpreter(Interpreter parent) {
+        this.context = parent.context;
+        this.globals = parent.globals;
+        this.memory = globals;
+        this.script = parent.script;
+        this.shadowStack = context.profiler == null ? null : context.profiler.newStack();
+    }
+
+    private static List<Object> list(Object value) {
+        if (!(value instanceof LoxList))
+            throw new NativeError("Expected a list");
+        return ((LoxList) value).snapshot();
+    }
+
+    static LoxCallable callable(Object value, int arity) {
+        if (!(value instanceof LoxCallable) || ((LoxCallable) value).arity() != arity) {
+            throw new NativeError("Expected a function taking " + arity + " arguments");
+        }
+        return (LoxCallable) value;
     }
 
-    void interpret(List<Stmt> statements) {
+    void interpret(CompiledScript compiled) {
+        ScriptTree script = compiled.enter();
+        ScriptTree previous = this.script;
+        Instrumentation instrumentation = context.instrumentation;
+        if (shadowStack != null)
+            shadowStack.push(null);
+        Object event = LoxEvents.beginScript();
+        boolean failed = false;
         try {
-            for (Stmt statement : statements) {
-                execute(statement);
+            this.script = script;
+            ClosureCompiler.Exec instrumented = instrumentation == null ? null
+                    : script.instrumented(instrumentation).statements;
+            if (instrumented != null) {
+                instrumented.exec(this, memory);
+            } else if (context.closures) {
+                script.program().statements.exec(this, memory);
+            } else {
+                for (Stmt statement : script.statements) {
+                    execute(statement);
+                }
             }
         } catch (RuntimeError error) {
-            Lox.runtimeError(error);
+            failed = true;
+            context.runtimeError(error);
+        } finally {
+            if (event != null)
+                LoxEvents.endScript(event, script, failed);
+            this.script = previous;
+            if (shadowStack != null)
+                shadowStack.pop();
+            compiled.exit();
         }
     }
 
@@ -66,7 +134,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         statement.accept(this);
     }
 
-    private String stringify(Object value) {
+    static String stringify(Object value) {
         if (value == null)
             return "nil";
         if (value instanceof Double) {
@@ -97,11 +165,9 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 checkNumberOperands(expr.operator, left, right);
                 return (double) left <= (double) right;
             case EQUAL_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return isEqual(left, right);
+                return equal(left, right);
             case BANG_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return !isEqual(left, right);
+                return !equal(left, right);
             case MINUS:
                 checkNumberOperands(expr.operator, left, right);
                 return (double) left - (double) right;
@@ -113,7 +179,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 return (double) left * (double) right;
             case PLUS:
                 if (left instanceof String && right instanceof String) {
-                    return (String) left + (String) right;
+                    return concatenate((String) left, (String) right);
                 } else if (left instanceof Double && right instanceof Double) {
                     return (double) left + (double) right;
                 }
@@ -129,14 +195,29 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         throw new RuntimeError(operator, "Operands must be numbers");
     }
 
-    private boolean isEqual(Object left, Object right) {
-        if (left == null && right == null)
+    // Literals, interned strings and a value compared with itself are the same object, which
+    // settles equality without comparing contents.
+    static boolean isEqual(Object left, Object right) {
+        if (left == right)
             return true;
         if (left == null)
             return false;
         return left.equals(right);
     }
 
+    // Under --intern-strings every string a script can reach is interned, so two strings are equal
+    // exactly when they are the same object.
+    boolean equal(Object left, Object right) {
+        if (context.internStrings && left instanceof String)
+            return left == right;
+        return isEqual(left, right);
+    }
+
+    String concatenate(String left, String right) {
+        String result = left + right;
+        return context.internStrings ? result.intern() : result;
+    }
+
     @Override
     public Object visitGroupingExpr(Grouping expr) {
         return evaluate(expr.expression);
@@ -167,7 +248,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         throw new RuntimeError(operator, "Operand must be a number");
     }
 
-    private boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         if (object == null)
             return false;
         if (object instanceof Boolean)
@@ -190,7 +271,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitPrintStmt(Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
+        context.out.println(stringify(value));
         return null;
     }
 
@@ -210,7 +291,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     private Object lookupVariable(Token name, Expr expr) {
-        Integer distance = locals.get(expr);
+        Integer distance = script.locals.get(expr);
         if (distance != null) {
             return memory.getAt(distance, name.lexeme);
         } else {
@@ -222,7 +303,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitAssignExpr(Assign expr) {
         Object value = evaluate(expr.value);
-        Integer distance = locals.get(expr);
+        Integer distance = script.locals.get(expr);
         if (distance != null) {
             memory.assignAt(distance, expr.name, value);
         } else {
@@ -233,7 +314,20 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitBlockStmt(Block stmt) {
-        executeBlock(stmt.statements, new Memory(memory));
+        AllocationTracker tracker = AllocationTracker.instance;
+        if (stmt.frameReusable && tracker == null) {
+            Memory memory = frames.acquire(this.memory);
+            try {
+                executeBlock(stmt.statements, memory);
+            } finally {
+                frames.release(memory);
+            }
+            return null;
+        }
+        Memory memory = new Memory(this.memory);
+        if (tracker != null)
+            tracker.block(memory, stmt);
+        executeBlock(stmt.statements, memory);
         return null;
     }
 
@@ -249,6 +343,28 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
     }
 
+    void executeFunction(Function declaration, Memory memory, ScriptTree script) {
+        Instrumentation instrumentation = context.instrumentation;
+        if (instrumentation != null) {
+            ClosureCompiler.Exec body = script.instrumented(instrumentation).body(declaration);
+            if (body != null) {
+                body.exec(this, memory);
+                return;
+            }
+        }
+        if (context.closures) {
+            script.program().body(declaration).exec(this, memory);
+            return;
+        }
+        ScriptTree previous = this.script;
+        try {
+            this.script = script;
+            executeBlock(declaration.body, memory);
+        } finally {
+            this.script = previous;
+        }
+    }
+
     @Override
     public Void visitIfStmt(If stmt) {
         if (isTruthy(evaluate(stmt.condition))) {
@@ -271,6 +387,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitWhileStmt(While stmt) {
         while (isTruthy(evaluate(stmt.condition))) {
+            loopIterations++;
             execute(stmt.body);
         }
         return null;
@@ -283,20 +400,26 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         for (Expr argument : expr.arguments) {
             arguments.add(evaluate(argument));
         }
-        if (!(callee instanceof LoxCallable)) {
-            throw new RuntimeError(expr.paren, "Can only call functions and classes");
-        }
-        LoxCallable function = (LoxCallable) callee;
-        if (arguments.size() != function.arity()) {
-            throw new RuntimeError(expr.paren,
-                    "Expected " + function.arity() + " arguments, but got " + arguments.size());
+        callLine = expr.paren.line;
+        try {
+            return expr.site.call(callee, this, arguments);
+        } catch (NativeError error) {
+            throw new RuntimeError(expr.paren, error.getMessage());
+        } catch (StackOverflowError error) {
+            // Each call level gets a chance to turn the overflow into a Lox error; the innermost
+            // ones may not have the stack left to build it, so it surfaces a few calls further out.
+            // Whatever the deepest call was updating may be left half done, see stackOverflowed.
+            context.stackOverflowed = true;
+            throw new RuntimeError(expr.paren, "Stack overflow");
         }
-        return function.call(this, arguments);
     }
 
     @Override
     public Void visitFunctionStmt(Function stmt) {
-        LoxFunction function = new LoxFunction(stmt, memory, false);
+        LoxFunction function = new LoxFunction(stmt, memory, false, script);
+        AllocationTracker tracker = AllocationTracker.instance;
+        if (tracker != null)
+            tracker.closure(function, stmt);
         memory.define(stmt.name.lexeme, function);
         return null;
     }
@@ -309,10 +432,6 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         throw new Return(value);
     }
 
-    public void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
-    }
-
     @Override
     public Void visitClassStmt(Class stmt) {
         Object superclass = null;
@@ -329,10 +448,10 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
         Map<String, LoxFunction> methods = new HashMap<>();
         for (Stmt.Function method : stmt.methods) {
-            LoxFunction function = new LoxFunction(method, memory, method.name.lexeme.equals("init"));
+            LoxFunction function = new LoxFunction(method, memory, method.name.lexeme.equals("init"), script);
             methods.put(method.name.lexeme, function);
         }
-        LoxClass cls = new LoxClass(stmt.name.lexeme, (LoxClass) superclass, methods);
+        LoxClass cls = new LoxClass(stmt.name.lexeme, stmt.name.line, (LoxClass) superclass, methods);
         if (superclass != null) {
             memory = memory.enclosing;
         }
@@ -346,6 +465,9 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         if (object instanceof LoxInstance) {
             return ((LoxInstance) object).get(expr.name);
         }
+        if (object instanceof NativeObject) {
+            return ((NativeObject) object).get(expr.name);
+        }
         throw new RuntimeError(expr.name, "Only insances have properties");
     }
 
@@ -367,14 +489,14 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitSuperExpr(Super expr) {
-        int distance = locals.get(expr);
+        int distance = script.locals.get(expr);
         LoxClass superclass = (LoxClass) memory.getAt(distance, "super");
         LoxInstance object = (LoxInstance) memory.getAt(distance - 1, "this");
         LoxFunction method = superclass.findMethod(expr.method.lexeme);
         if (method == null) {
             throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'");
         }
-        return method.bind(object);
+        return method.bind(object, expr.method.line);
     }
 
 }
\ No newline at end of file
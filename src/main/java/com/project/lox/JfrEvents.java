@@ -0,0 +1,198 @@
+package com.project.lox;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events for Lox-level activity. They cost nothing beyond an enabled check
+ * unless a recording has switched them on. The event classes are only touched once the recorder
+ * is running, because loading an event class initializes the recorder's metadata, and that alone
+ * costs a short script several times its normal start-up. Instantiation events are off by default
+ * because a single script can create millions of instances; turn them on with
+ * {@code -XX:StartFlightRecording:+com.project.lox.ClassInstantiation#enabled=true} or a custom
+ * .jfc file. Only {@link LoxEvents} calls in here, and only on a JVM with the {@code jdk.jfr} API,
+ * so events go in and out as plain objects and callers never name an event class.
+ */
+final class JfrEvents {
+    private JfrEvents() {
+    }
+
+    static boolean recording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /** Whether a running recording has function call events switched on. */
+    static boolean recordingCalls() {
+        return recording() && Calls.TYPE.isEnabled();
+    }
+
+    // Loaded on first use, which is after the recorder is running.
+    private static final class Calls {
+        static final EventType TYPE = EventType.getEventType(FunctionCall.class);
+    }
+
+    /** Starts timing a function call, or returns null when the event is not being recorded. */
+    static Object beginCall() {
+        if (!recording())
+            return null;
+        FunctionCall event = new FunctionCall();
+        if (!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+
+    static void endCall(Object begun, Stmt.Function function) {
+        FunctionCall event = (FunctionCall) begun;
+        event.end();
+        if (event.shouldCommit()) {
+            event.function = function.name.lexeme;
+            event.line = function.name.line;
+            event.commit();
+        }
+    }
+
+    static Object beginInstantiation() {
+        if (!recording())
+            return null;
+        ClassInstantiation event = new ClassInstantiation();
+        if (!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+
+    static void endInstantiation(Object begun, LoxClass cls) {
+        ClassInstantiation event = (ClassInstantiation) begun;
+        event.end();
+        if (event.shouldCommit()) {
+            event.className = cls.name;
+            event.commit();
+        }
+    }
+
+    static Object beginScript() {
+        if (!recording())
+            return null;
+        ScriptExecution event = new ScriptExecution();
+        if (!event.isEnabled())
+            return null;
+        event.allocated = allocatedBytes();
+        event.collections = collections();
+        event.begin();
+        return event;
+    }
+
+    static void endScript(Object begun, ScriptTree script, boolean failed) {
+        ScriptExecution event = (ScriptExecution) begun;
+        event.end();
+        if (event.shouldCommit()) {
+            event.statements = script.statements.size();
+            event.failed = failed;
+            event.allocated = allocatedBytes() - event.allocated;
+            event.collections = collections() - event.collections;
+            event.commit();
+        }
+    }
+
+    // Zero where the JVM cannot count allocations per thread.
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean))
+            return 0;
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long collections() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionCount());
+        }
+        return total;
+    }
+
+    static void runtimeError(String message, int line) {
+        if (!recording())
+            return;
+        RuntimeErrorEvent event = new RuntimeErrorEvent();
+        if (event.shouldCommit()) {
+            event.message = message;
+            event.line = line;
+            event.commit();
+        }
+    }
+
+    @Name("com.project.lox.FunctionCall")
+    @Label("Lox Function Call")
+    @Description("A call to a Lox function that took longer than the threshold")
+    @Category("Lox")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class FunctionCall extends Event {
+        @Label("Function")
+        String function;
+
+        @Label("Line")
+        @Description("Line of the function declaration")
+        int line;
+    }
+
+    @Name("com.project.lox.RuntimeError")
+    @Label("Lox Runtime Error")
+    @Category("Lox")
+    @StackTrace(false)
+    static final class RuntimeErrorEvent extends Event {
+        @Label("Message")
+        String message;
+
+        @Label("Line")
+        int line;
+    }
+
+    @Name("com.project.lox.ClassInstantiation")
+    @Label("Lox Class Instantiation")
+    @Description("Creation of a Lox instance, including its initializer")
+    @Category("Lox")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ClassInstantiation extends Event {
+        @Label("Class")
+        String className;
+    }
+
+    @Name("com.project.lox.ScriptExecution")
+    @Label("Lox Script Execution")
+    @Description("Execution of a compiled script, from its first statement to its last")
+    @Category("Lox")
+    @StackTrace(false)
+    static final class ScriptExecution extends Event {
+        @Label("Statements")
+        int statements;
+
+        @Label("Failed")
+        @Description("Whether the script stopped with a runtime error")
+        boolean failed;
+
+        @Label("Allocated")
+        @Description("Bytes allocated by the thread running the script, not counting tasks")
+        @DataAmount
+        long allocated;
+
+        @Label("Collections")
+        @Description("Garbage collections in the whole JVM while the script ran")
+        long collections;
+    }
+}
@@ -0,0 +1,536 @@
+package com.project.lox;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Compiles hot functions to JVM bytecode, which HotSpot then optimizes like any other Java code.
+ * Only pure functions (see {@link Purity}) that work purely on numbers are compiled: every
+ * parameter, local and return value a number, with booleans only as conditions. Each function is
+ * compiled together with the functions it calls into a class of static methods taking and
+ * returning {@code double}, so calls between them are plain JVM calls.
+ *
+ * <p>
+ * Compiled code assumes that its arguments are numbers and that the globals it calls still hold
+ * the functions it was compiled from. Both are checked on entry; when either does not hold the
+ * call runs in the interpreter instead. Because the functions are pure, nothing compiled code does
+ * can be observed from Lox, so it needs no way back to the interpreter once it has started.
+ */
+final class Jit implements Expr.Visitor<Jit.Type>, Stmt.Visitor<Void> {
+    /** Calls plus loop iterations after which a function is compiled. */
+    static final int THRESHOLD = 1000;
+    /** Returned by {@link Compiled#call} when the call has to be interpreted. */
+    static final Object DEOPT = new Object();
+    static final Compiled NOT_COMPILED = new Compiled(null, new String[0], new Stmt.Function[0]);
+
+    // A native image cannot load classes it did not see at build time.
+    private static final boolean SUPPORTED = System.getProperty("org.graalvm.nativeimage.imagecode") == null;
+    private static final String PACKAGE = "com/project/lox/jit/";
+    private static final String DOUBLE_BITS = "(D)J";
+
+    enum Type {
+        NUMBER, BOOLEAN
+    }
+
+    /** Thrown when a function uses something compiled code does not support. */
+    private static final class Unsupported extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final class Local {
+        final int slot;
+        final Type type;
+
+        Local(int slot, Type type) {
+            this.slot = slot;
+            this.type = type;
+        }
+    }
+
+    private static final class Loader extends ClassLoader {
+        Loader() {
+            super(Jit.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    static final class Compiled {
+        private final ToDoubleFunction<Object> code;
+        // The globals the compiled code calls directly, and the functions it expects them to hold.
+        private final String[] names;
+        private final Stmt.Function[] functions;
+
+        private Compiled(ToDoubleFunction<Object> code, String[] names, Stmt.Function[] functions) {
+            this.code = code;
+            this.names = names;
+            this.functions = functions;
+        }
+
+        Object call(Memory globals, List<Object> arguments) {
+            if (code == null)
+                return DEOPT;
+            Map<String, Object> bindings = globals.bindings();
+            for (int i = 0; i < names.length; i++) {
+                Object function = bindings.get(names[i]);
+                if (!(function instanceof LoxFunction) || !((LoxFunction) function).isDeclaredBy(functions[i]))
+                    return DEOPT;
+            }
+            double[] values = new double[arguments.size()];
+            for (int i = 0; i < values.length; i++) {
+                Object argument = arguments.get(i);
+                if (!(argument instanceof Double))
+                    return DEOPT;
+                values[i] = (Double) argument;
+            }
+            return code.applyAsDouble(values);
+        }
+    }
+
+    private final ScriptTree script;
+    private final String className;
+    private final ClassFile file = new ClassFile();
+    // Functions the class needs by name, and the same in the order they were first called.
+    private final Map<String, Stmt.Function> functions = new LinkedHashMap<>();
+    private final List<Stmt.Function> queue = new ArrayList<>();
+    private ClassFile.Code code;
+    private final Deque<Map<String, Local>> scopes = new ArrayDeque<>();
+    private int nextSlot;
+    private boolean reachable;
+
+    private Jit(ScriptTree script, Stmt.Function entry) {
+        this.script = script;
+        this.className = PACKAGE + entry.name.lexeme;
+    }
+
+    /** Compiles {@code function}, or returns {@link #NOT_COMPILED} if it cannot be compiled. */
+    static Compiled compile(ScriptTree script, Stmt.Function function) {
+        if (!SUPPORTED || !script.isPure(function))
+            return NOT_COMPILED;
+        Jit jit = new Jit(script, function);
+        try {
+            return jit.compileClass(function);
+        } catch (Unsupported | ClassFile.TooLarge | ReflectiveOperationException | LinkageError e) {
+            return NOT_COMPILED;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Compiled compileClass(Stmt.Function entry) throws ReflectiveOperationException {
+        require(entry);
+        // Compiling a function can add the functions it calls to the end of the queue.
+        for (int i = 0; i < queue.size(); i++) {
+            compileMethod(queue.get(i));
+        }
+        ClassFile.Code constructor = file.method(ClassFile.ACC_PUBLIC, "<init>", "()V");
+        constructor.local(ClassFile.ALOAD, 0, 1);
+        constructor.invoke(ClassFile.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", -1);
+        constructor.op(ClassFile.RETURN, 0);
+        constructor.end(1);
+        ClassFile.Code apply = file.method(ClassFile.ACC_PUBLIC, "applyAsDouble", "(Ljava/lang/Object;)D");
+        apply.local(ClassFile.ALOAD, 1, 1);
+        apply.op2(ClassFile.CHECKCAST, file.classRef("[D"), 0);
+        apply.local(ClassFile.ASTORE, 2, -1);
+        for (int i = 0; i < entry.params.size(); i++) {
+            apply.local(ClassFile.ALOAD, 2, 1);
+            apply.pushInt(i);
+            apply.op(ClassFile.DALOAD, 0);
+        }
+        apply.invoke(ClassFile.INVOKESTATIC, className, entry.name.lexeme, descriptor(entry),
+                2 - 2 * entry.params.size());
+        apply.op(ClassFile.DRETURN, -2);
+        apply.end(3);
+
+        byte[] bytes = file.toBytes(className, "java/lang/Object", "java/util/function/ToDoubleFunction");
+        Class<?> cls = new Loader().define(className.replace('/', '.'), bytes);
+        ToDoubleFunction<Object> instance = (ToDoubleFunction<Object>) cls.getConstructor().newInstance();
+        return new Compiled(instance, functions.keySet().toArray(new String[0]),
+                functions.values().toArray(new Stmt.Function[0]));
+    }
+
+    private void require(Stmt.Function function) {
+        functions.put(function.name.lexeme, function);
+        queue.add(function);
+    }
+
+    private static String descriptor(Stmt.Function function) {
+        StringBuilder descriptor = new StringBuilder("(");
+        for (int i = 0; i < function.params.size(); i++) {
+            descriptor.append('D');
+        }
+        return descriptor.append(")D").toString();
+    }
+
+    private void compileMethod(Stmt.Function function) {
+        // Each double takes two of the 255 slots a method's parameters may use.
+        if (function.params.size() > 127)
+            throw new Unsupported();
+        code = file.method(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, function.name.lexeme, descriptor(function));
+        nextSlot = 0;
+        scopes.clear();
+        scopes.push(new HashMap<>());
+        for (Token param : function.params) {
+            declare(param.lexeme, Type.NUMBER);
+        }
+        reachable = true;
+        compile(function.body);
+        // Falling off the end returns nil, which is not a number.
+        if (reachable)
+            throw new Unsupported();
+        code.end(nextSlot);
+    }
+
+    private Local declare(String name, Type type) {
+        Local local = new Local(nextSlot, type);
+        nextSlot += type == Type.NUMBER ? 2 : 1;
+        scopes.peek().put(name, local);
+        return local;
+    }
+
+    private Local lookup(String name) {
+        for (Map<String, Local> scope : scopes) {
+            Local local = scope.get(name);
+            if (local != null)
+                return local;
+        }
+        return null;
+    }
+
+    private void compile(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            // Nothing after a return runs, and code the verifier never reaches needs no types.
+            if (!reachable)
+                return;
+            statement.accept(this);
+        }
+    }
+
+    private void compile(Stmt statement) {
+        statement.accept(this);
+    }
+
+    private Type compile(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private void number(Expr expr) {
+        if (compile(expr) != Type.NUMBER)
+            throw new Unsupported();
+    }
+
+    // Leaves 1 on the stack if the value on top of it is truthy and 0 if not: every boolean is
+    // what it says, and a number is truthy unless it is zero.
+    private void truthy(Type type) {
+        if (type == Type.BOOLEAN)
+            return;
+        code.op(ClassFile.DCONST_0, 2);
+        code.op(ClassFile.DCMPL, -3);
+        condition(ClassFile.IFNE);
+    }
+
+    // Turns the int on top of the stack into 1 if the branch would be taken and 0 if not.
+    private void condition(int opcode) {
+        ClassFile.Label no = new ClassFile.Label();
+        ClassFile.Label end = new ClassFile.Label();
+        // The conditional jumps come in pairs, each the negation of the other.
+        code.jump(((opcode - ClassFile.IFEQ) ^ 1) + ClassFile.IFEQ, no, -1);
+        code.op(ClassFile.ICONST_1, 1);
+        code.jump(ClassFile.GOTO, end, 0);
+        code.mark(no);
+        code.op(ClassFile.ICONST_0, 0);
+        code.mark(end);
+    }
+
+    private void pop(Type type) {
+        code.op(type == Type.NUMBER ? ClassFile.POP2 : ClassFile.POP, type == Type.NUMBER ? -2 : -1);
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        scopes.push(new HashMap<>());
+        compile(stmt.statements);
+        scopes.pop();
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        pop(compile(stmt.expression));
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null)
+            throw new Unsupported();
+        Type type = compile(stmt.initializer);
+        Local local = declare(stmt.name.lexeme, type);
+        code.local(type == Type.NUMBER ? ClassFile.DSTORE : ClassFile.ISTORE, local.slot,
+                type == Type.NUMBER ? -2 : -1);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        truthy(compile(stmt.condition));
+        ClassFile.Label otherwise = new ClassFile.Label();
+        ClassFile.Label end = new ClassFile.Label();
+        code.jump(ClassFile.IFEQ, otherwise, -1);
+        compile(stmt.thenBranch);
+        boolean thenReachable = reachable;
+        if (thenReachable)
+            code.jump(ClassFile.GOTO, end, 0);
+        code.mark(otherwise);
+        reachable = true;
+        if (stmt.elseBranch != null)
+            compile(stmt.elseBranch);
+        reachable = reachable || thenReachable;
+        code.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        // Lox has no break, so nothing after a loop on a literal true can run.
+        boolean forever = stmt.condition instanceof Expr.Literal
+                && Boolean.TRUE.equals(((Expr.Literal) stmt.condition).value);
+        ClassFile.Label start = new ClassFile.Label();
+        ClassFile.Label end = new ClassFile.Label();
+        code.mark(start);
+        if (!forever) {
+            truthy(compile(stmt.condition));
+            code.jump(ClassFile.IFEQ, end, -1);
+        }
+        compile(stmt.body);
+        if (reachable)
+            code.jump(ClassFile.GOTO, start, 0);
+        code.mark(end);
+        reachable = !forever;
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null)
+            throw new Unsupported();
+        number(stmt.value);
+        code.op(ClassFile.DRETURN, -2);
+        reachable = false;
+        return null;
+    }
+
+    @Override
+    public Type visitBinaryExpr(Expr.Binary expr) {
+        number(expr.left);
+        number(expr.right);
+        switch (expr.operator.type) {
+            case PLUS:
+                code.op(ClassFile.DADD, -2);
+                return Type.NUMBER;
+            case MINUS:
+                code.op(ClassFile.DSUB, -2);
+                return Type.NUMBER;
+            case STAR:
+                code.op(ClassFile.DMUL, -2);
+                return Type.NUMBER;
+            case SLASH:
+                code.op(ClassFile.DDIV, -2);
+                return Type.NUMBER;
+            // dcmpl and dcmpg differ only in what they give for NaN; each comparison picks the
+            // one that makes NaN compare false, as it does in the interpreter.
+            case GREATER:
+                code.op(ClassFile.DCMPL, -3);
+                condition(ClassFile.IFGT);
+                return Type.BOOLEAN;
+            case GREATER_EQUAL:
+                code.op(ClassFile.DCMPL, -3);
+                condition(ClassFile.IFGE);
+                return Type.BOOLEAN;
+            case LESS:
+                code.op(ClassFile.DCMPG, -3);
+                condition(ClassFile.IFLT);
+                return Type.BOOLEAN;
+            case LESS_EQUAL:
+                code.op(ClassFile.DCMPG, -3);
+                condition(ClassFile.IFLE);
+                return Type.BOOLEAN;
+            // Numbers are equal the way Double.equals has it: NaN equals itself and 0 is not -0.
+            case EQUAL_EQUAL:
+                compareBits();
+                condition(ClassFile.IFEQ);
+                return Type.BOOLEAN;
+            case BANG_EQUAL:
+                compareBits();
+                condition(ClassFile.IFNE);
+                return Type.BOOLEAN;
+            default:
+                break;
+        }
+        throw new Unsupported();
+    }
+
+    private void compareBits() {
+        int right = nextSlot;
+        nextSlot += 2;
+        code.local(ClassFile.DSTORE, right, -2);
+        code.invoke(ClassFile.INVOKESTATIC, "java/lang/Double", "doubleToLongBits", DOUBLE_BITS, 0);
+        code.local(ClassFile.DLOAD, right, 2);
+        code.invoke(ClassFile.INVOKESTATIC, "java/lang/Double", "doubleToLongBits", DOUBLE_BITS, 0);
+        code.op(ClassFile.LCMP, -3);
+    }
+
+    @Override
+    public Type visitGroupingExpr(Expr.Grouping expr) {
+        return compile(expr.expression);
+    }
+
+    @Override
+    public Type visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value instanceof Double) {
+            code.pushDouble((Double) expr.value);
+            return Type.NUMBER;
+        }
+        if (expr.value instanceof Boolean) {
+            code.op((Boolean) expr.value ? ClassFile.ICONST_1 : ClassFile.ICONST_0, 1);
+            return Type.BOOLEAN;
+        }
+        throw new Unsupported();
+    }
+
+    @Override
+    public Type visitUnaryExpr(Expr.Unary expr) {
+        Type type = compile(expr.right);
+        if (expr.operator.type == TokenType.MINUS && type == Type.NUMBER) {
+            code.op(ClassFile.DNEG, 0);
+            return Type.NUMBER;
+        }
+        if (expr.operator.type == TokenType.BANG) {
+            truthy(type);
+            code.op(ClassFile.ICONST_1, 1);
+            code.op(ClassFile.IXOR, -1);
+            return Type.BOOLEAN;
+        }
+        throw new Unsupported();
+    }
+
+    @Override
+    public Type visitVariableExpr(Expr.Variable expr) {
+        Local local = lookup(expr.name.lexeme);
+        if (local == null)
+            throw new Unsupported();
+        if (local.type == Type.NUMBER) {
+            code.local(ClassFile.DLOAD, local.slot, 2);
+        } else {
+            code.local(ClassFile.ILOAD, local.slot, 1);
+        }
+        return local.type;
+    }
+
+    @Override
+    public Type visitAssignExpr(Expr.Assign expr) {
+        Local local = lookup(expr.name.lexeme);
+        if (local == null || compile(expr.value) != local.type)
+            throw new Unsupported();
+        if (local.type == Type.NUMBER) {
+            code.op(ClassFile.DUP2, 2);
+            code.local(ClassFile.DSTORE, local.slot, -2);
+        } else {
+            code.op(ClassFile.DUP, 1);
+            code.local(ClassFile.ISTORE, local.slot, -1);
+        }
+        return local.type;
+    }
+
+    // 'and' and 'or' give back one of their operands, so both must be of the same type.
+    @Override
+    public Type visitLogicalExpr(Expr.Logical expr) {
+        Type type = compile(expr.left);
+        ClassFile.Label end = new ClassFile.Label();
+        int shortCircuit = expr.operator.type == TokenType.OR ? ClassFile.IFNE : ClassFile.IFEQ;
+        if (type == Type.NUMBER) {
+            code.op(ClassFile.DUP2, 2);
+            code.op(ClassFile.DCONST_0, 2);
+            code.op(ClassFile.DCMPL, -3);
+            code.jump(shortCircuit, end, -1);
+            code.op(ClassFile.POP2, -2);
+        } else {
+            code.op(ClassFile.DUP, 1);
+            code.jump(shortCircuit, end, -1);
+            code.op(ClassFile.POP, -1);
+        }
+        if (compile(expr.right) != type)
+            throw new Unsupported();
+        code.mark(end);
+        return type;
+    }
+
+    @Override
+    public Type visitCallExpr(Expr.Call expr) {
+        if (!(expr.callee instanceof Expr.Variable))
+            throw new Unsupported();
+        String name = ((Expr.Variable) expr.callee).name.lexeme;
+        if (lookup(name) != null)
+            throw new Unsupported();
+        Stmt.Function callee = functions.get(name);
+        if (callee == null) {
+            callee = script.pureFunction(name);
+            if (callee == null)
+                throw new Unsupported();
+            require(callee);
+        }
+        if (callee.params.size() != expr.arguments.size())
+            throw new Unsupported();
+        for (Expr argument : expr.arguments) {
+            number(argument);
+        }
+        code.invoke(ClassFile.INVOKESTATIC, className, name, descriptor(callee), 2 - 2 * expr.arguments.size());
+        return Type.NUMBER;
+    }
+
+    @Override
+    public Type visitGetExpr(Expr.Get expr) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Type visitSetExpr(Expr.Set expr) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Type visitThisExpr(Expr.This expr) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Type visitSuperExpr(Expr.Super expr) {
+        throw new Unsupported();
+    }
+}
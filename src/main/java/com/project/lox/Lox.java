@@ -1,81 +1,262 @@
 package com.project.lox;
 
 import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.List;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 public class Lox {
-    static boolean hadError = false;
-    private static boolean hadRuntimeError = false;
-    private static final Interpreter interpreter = new Interpreter();
+    private static final long PROFILE_INTERVAL_MILLIS = 10;
+    private static final long DEFAULT_METRICS_PERIOD_SECONDS = 10;
+    private static final int DEFAULT_MEMOIZE_ENTRIES = 10000;
+    private static final long DEFAULT_STACK_MEGABYTES = 64;
 
-    public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [file]");
-            System.exit(1);
-        } else if (args.length == 1) {
-            runFile(args[0]);
-        } else {
-            runPrompt();
+    private static ExecutionContext context;
+    private static Interpreter interpreter;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String path = null;
+        String profileOutput = null;
+        long metricsPeriod = 0;
+        boolean trackAllocations = false;
+        String output = "buffered";
+        int memoizeEntries = 0;
+        long stackMegabytes = DEFAULT_STACK_MEGABYTES;
+        String loadSnapshot = null;
+        String saveSnapshot = null;
+        boolean jit = true;
+        String engine = "tree";
+        boolean internStrings = false;
+        Set<String> trace = null;
+        String coverageOutput = null;
+        try {
+            for (String arg : args) {
+                if (arg.equals("--profile")) {
+                    profileOutput = "lox.collapsed";
+                } else if (arg.startsWith("--profile=")) {
+                    profileOutput = arg.substring("--profile=".length());
+                } else if (arg.equals("--metrics")) {
+                    metricsPeriod = DEFAULT_METRICS_PERIOD_SECONDS;
+                } else if (arg.startsWith("--metrics=")) {
+                    metricsPeriod = Long.parseLong(arg.substring("--metrics=".length()));
+                } else if (arg.equals("--track-allocations")) {
+                    trackAllocations = true;
+                } else if (arg.startsWith("--output=")) {
+                    output = arg.substring("--output=".length());
+                } else if (arg.equals("--memoize")) {
+                    memoizeEntries = DEFAULT_MEMOIZE_ENTRIES;
+                } else if (arg.startsWith("--memoize=")) {
+                    memoizeEntries = Integer.parseInt(arg.substring("--memoize=".length()));
+                } else if (arg.startsWith("--engine=")) {
+                    engine = arg.substring("--engine=".length());
+                } else if (arg.equals("--intern-strings")) {
+                    internStrings = true;
+                } else if (arg.equals("--trace")) {
+                    trace = new HashSet<>();
+                } else if (arg.startsWith("--trace=")) {
+                    trace = new HashSet<>(Arrays.asList(arg.substring("--trace=".length()).split(",")));
+                } else if (arg.equals("--coverage")) {
+                    coverageOutput = "lcov.info";
+                } else if (arg.startsWith("--coverage=")) {
+                    coverageOutput = arg.substring("--coverage=".length());
+                } else if (arg.equals("--no-jit")) {
+                    jit = false;
+                } else if (arg.startsWith("--stack-size=")) {
+                    stackMegabytes = Long.parseLong(arg.substring("--stack-size=".length()));
+                } else if (arg.startsWith("--load-snapshot=")) {
+                    loadSnapshot = arg.substring("--load-snapshot=".length());
+                } else if (arg.startsWith("--save-snapshot=")) {
+                    saveSnapshot = arg.substring("--save-snapshot=".length());
+                } else if (path == null && !arg.startsWith("--")) {
+                    path = arg;
+                } else {
+                    usage();
+                }
+            }
+        } catch (NumberFormatException e) {
+            usage();
         }
+        if ((saveSnapshot != null || coverageOutput != null) && path == null
+                || !engine.equals("tree") && !engine.equals("closures")
+                || metricsPeriod < 0 || memoizeEntries < 0 || stackMegabytes <= 0)
+            usage();
+
+        context = new ExecutionContext(outputSink(output), System.err);
+        // Lines still buffered when the process is stopped, by a signal or an exit, are written
+        // from a shutdown hook.
+        OutputSink out = context.out;
+        Runtime.getRuntime().addShutdownHook(new Thread(out::flush));
+        if (profileOutput != null)
+            startProfiler(profileOutput);
+        if (metricsPeriod > 0)
+            startMetrics(metricsPeriod);
+        if (trackAllocations)
+            startAllocationTracking();
+        if (memoizeEntries > 0)
+            context.memoizer = new Memoizer(memoizeEntries);
+        context.jit = jit;
+        context.stackSize = stackMegabytes << 20;
+        context.closures = engine.equals("closures");
+        context.internStrings = internStrings;
+        Coverage coverage = coverageOutput == null ? null : new Coverage();
+        context.instrumentation = Instrumentation.of(trace == null ? null : new Tracer(System.err, trace), coverage);
+        interpreter = new Interpreter(context);
+        if (loadSnapshot != null)
+            loadSnapshot(loadSnapshot);
+        String file = path;
+        String snapshot = saveSnapshot;
+        String lcov = coverageOutput;
+        runWithStack(stackMegabytes << 20, () -> {
+            if (file != null) {
+                runFile(file, snapshot, coverage, lcov);
+            } else {
+                runPrompt();
+            }
+            return null;
+        });
     }
 
-    private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
-        if (hadError)
-            System.exit(2);
-        if (hadRuntimeError)
-            System.exit(3);
+    // Every Lox call nests several Java frames, so a script runs on a thread of its own whose
+    // stack is big enough for deep recursion, as do its tasks and parallel natives (see LoxThreads). The stack is reserved up front but only touched, and
+    // so only backed by memory, as deep as the script actually goes.
+    private static void runWithStack(long stackBytes, Callable<Void> body)
+            throws IOException, InterruptedException {
+        FutureTask<Void> task = new FutureTask<>(body);
+        new Thread(null, task, "lox-main", stackBytes).start();
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw (Error) cause;
+        }
     }
 
-    private static void runPrompt() throws IOException {
-        InputStreamReader input = new InputStreamReader(System.in);
-        BufferedReader reader = new BufferedReader(input);
-        while (true) {
-            System.out.print("> ");
-            run(reader.readLine());
-            hadError = false;
+    private static void usage() {
+        System.out.println("Usage: jlox [--profile[=output]] [--metrics[=seconds]] [--track-allocations]");
+        System.out.println("            [--memoize[=entries]] [--stack-size=megabytes] [--no-jit] [--engine=tree|closures]");
+        System.out.println("            [--output=direct|buffered|async] [--intern-strings] [--trace[=functions]]");
+        System.out.println("            [--coverage[=output]] [--load-snapshot=file] [--save-snapshot=file] [file]");
+        System.exit(1);
+    }
+
+    private static OutputSink outputSink(String kind) {
+        Writer stdout = new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), Charset.defaultCharset());
+        switch (kind) {
+            case "direct":
+                return new PrintStreamSink(System.out);
+            case "buffered":
+                return new BufferedSink(stdout);
+            case "async":
+                return new AsyncSink(stdout);
+            default:
+                usage();
+                return null;
         }
     }
 
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
-        if (hadError)
-            return;
-        Resolver resolver = new Resolver(interpreter);
-        resolver.resolve(statements);
-        if (hadError)
-            return;
-        interpreter.interpret(statements);
+    // The profile is written from a shutdown hook so that it is saved however the run ends.
+    private static void startProfiler(String output) {
+        Profiler profiler = new Profiler(PROFILE_INTERVAL_MILLIS);
+        context.profiler = profiler;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            profiler.stop();
+            try (Writer writer = Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)) {
+                profiler.write(writer);
+            } catch (IOException e) {
+                System.err.println("Could not write profile to " + output + ": " + e.getMessage());
+            }
+        }));
     }
 
-    static void error(int line, String message) {
-        report(line, "", message);
+    private static void startMetrics(long periodSeconds) {
+        LoxMetrics metrics = LoxMetrics.enable();
+        metrics.dumpPeriodically(System.err, periodSeconds);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.print(metrics.dump())));
     }
 
-    private static void report(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
+    private static void startAllocationTracking() {
+        AllocationTracker tracker = AllocationTracker.enable();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            // Give the collector a chance to clear what is already dead so live counts are current.
+            System.gc();
+            System.err.print(tracker.report());
+        }));
     }
 
-    public static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            report(token.line, " at end", message);
-        } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
+    private static void loadSnapshot(String path) {
+        try (InputStream in = Files.newInputStream(Paths.get(path))) {
+            HeapSnapshot.read(in).restore(interpreter.globals);
+        } catch (IOException e) {
+            System.err.println("Could not load snapshot from " + path + ": " + e);
+            System.exit(1);
         }
     }
 
-    public static void runtimeError(RuntimeError error) {
-        System.out.println("[line " + error.token.line + "] " + error.getMessage());
-        hadRuntimeError = true;
+    private static void saveSnapshot(String path) {
+        try (OutputStream out = Files.newOutputStream(Paths.get(path))) {
+            HeapSnapshot.capture(interpreter.globals).write(out);
+        } catch (IOException e) {
+            System.err.println("Could not save snapshot to " + path + ": " + e);
+            System.exit(1);
+        }
+    }
+
+    // Written even when the script fails, since what ran up to the failure is worth seeing.
+    private static void writeCoverage(Coverage coverage, CompiledScript script, String path, String output) {
+        try (Writer writer = Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)) {
+            coverage.write(script, path, writer);
+        } catch (IOException e) {
+            System.err.println("Could not write coverage to " + output + ": " + e.getMessage());
+        }
+    }
+
+    private static void runFile(String path, String saveSnapshot, Coverage coverage, String coverageOutput)
+            throws IOException {
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+        CompiledScript script = LoxEngine.compile(new String(bytes, Charset.defaultCharset()), context);
+        if (script != null)
+            interpreter.interpret(script);
+        context.out.close();
+        if (script != null && coverage != null)
+            writeCoverage(coverage, script, path, coverageOutput);
+        ExecutionResult result = LoxEngine.resultOf(context);
+        if (result != ExecutionResult.OK)
+            System.exit(result.exitCode);
+        if (saveSnapshot != null)
+            saveSnapshot(saveSnapshot);
+    }
+
+    private static void runPrompt() throws IOException {
+        InputStreamReader input = new InputStreamReader(System.in);
+        BufferedReader reader = new BufferedReader(input);
+        while (true) {
+            System.out.print("> ");
+            LoxEngine.run(interpreter, reader.readLine());
+            context.out.flush();
+            context.hadError = false;
+            if (context.stackOverflowed) {
+                System.err.println("The stack overflowed, which may have left globals half updated; ending the session.");
+                System.exit(ExecutionResult.RUNTIME_ERROR.exitCode);
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,86 @@
+package com.project.lox;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The call site of one call expression, with an inline cache of the callees it has called. The
+ * checks that a callee can be called with this many arguments are made once, when it is cached,
+ * so a call that hits the cache goes straight to the callee. Once {@link #MAX_LINKED} callees are
+ * cached the site is megamorphic and checks every call again.
+ *
+ * <p>Sites live in the syntax tree, which every execution of a script shares, so callees are
+ * cached by something that fixes their arity and outlives any one execution rather than by the
+ * runtime objects themselves: a function by its declaration, which every closure and bound method
+ * of it shares; a class by the declaration of its initializer, as its superclass may differ from
+ * one execution to the next; and a native by its name and arity, shared by the methods of every
+ * map or list. Nothing a script creates is kept alive by a site, and running a script again
+ * finds its sites linked to the same keys.
+ */
+final class LoxCallSite {
+    static final int MAX_LINKED = 4;
+    private static final Object[] EMPTY = new Object[0];
+    // The key of every class without an initializer, which all take no arguments.
+    private static final Object NO_INITIALIZER = new Object();
+
+    private final Token paren;
+    private final int arity;
+    // Replaced rather than changed, so that racing threads each see a whole cache. Null once the
+    // site is megamorphic.
+    private volatile Object[] linked = EMPTY;
+
+    LoxCallSite(Token paren, int arity) {
+        this.paren = paren;
+        this.arity = arity;
+    }
+
+    Object call(Object callee, Interpreter interpreter, List<Object> arguments) {
+        Object[] linked = this.linked;
+        if (linked != null) {
+            Object key = key(callee);
+            for (Object entry : linked) {
+                if (entry == key)
+                    return ((LoxCallable) callee).call(interpreter, arguments);
+            }
+        }
+        LoxCallable function = check(callee);
+        if (linked != null)
+            link(linked, key(callee));
+        return function.call(interpreter, arguments);
+    }
+
+    private static Object key(Object callee) {
+        if (callee instanceof LoxFunction)
+            return ((LoxFunction) callee).declaration();
+        if (callee instanceof NativeFunction)
+            return ((NativeFunction) callee).key();
+        if (callee instanceof LoxClass) {
+            LoxFunction initializer = ((LoxClass) callee).findMethod("init");
+            return initializer == null ? NO_INITIALIZER : initializer.declaration();
+        }
+        return callee;
+    }
+
+    boolean isMegamorphic() {
+        return linked == null;
+    }
+
+    private LoxCallable check(Object callee) {
+        if (!(callee instanceof LoxCallable))
+            throw new RuntimeError(paren, "Can only call functions and classes");
+        LoxCallable function = (LoxCallable) callee;
+        if (arity != function.arity())
+            throw new RuntimeError(paren, "Expected " + function.arity() + " arguments, but got " + arity);
+        return function;
+    }
+
+    private void link(Object[] linked, Object key) {
+        if (linked.length == MAX_LINKED) {
+            this.linked = null;
+            return;
+        }
+        Object[] relinked = Arrays.copyOf(linked, linked.length + 1);
+        relinked[linked.length] = key;
+        this.linked = relinked;
+    }
+}
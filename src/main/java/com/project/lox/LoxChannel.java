@@ -0,0 +1,59 @@
+package com.project.lox;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+
+/**
+ * A blocking queue between tasks. An unbuffered channel hands each value directly from sender to
+ * receiver; a buffered one lets senders run ahead by up to its capacity.
+ */
+class LoxChannel implements NativeObject {
+    // Blocking queues cannot hold null, so nil travels as this marker.
+    private static final Object NIL = new Object();
+
+    private final BlockingQueue<Object> queue;
+
+    LoxChannel(int capacity) {
+        queue = capacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(capacity);
+    }
+
+    void send(Object value) {
+        try {
+            queue.put(value == null ? NIL : value);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NativeError("Interrupted while sending on a channel");
+        }
+    }
+
+    Object receive() {
+        try {
+            Object value = queue.take();
+            return value == NIL ? null : value;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NativeError("Interrupted while receiving from a channel");
+        }
+    }
+
+    @Override
+    public Object get(Token name) {
+        switch (name.lexeme) {
+            case "send":
+                return new NativeFunction("send", 1, (interpreter, arguments) -> {
+                    send(arguments.get(0));
+                    return null;
+                });
+            case "receive":
+                return new NativeFunction("receive", 0, (interpreter, arguments) -> receive());
+            default:
+                throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<channel>";
+    }
+}
@@ -1,15 +1,21 @@
 package com.project.lox;
 
+import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
 
-public class LoxClass implements LoxCallable {
+public class LoxClass implements LoxCallable, Serializable {
+    private static final long serialVersionUID = 2L;
+
     final String name;
+    // Of the declaration, to tell apart classes that share a name.
+    final int line;
     private final Map<String, LoxFunction> methods;
     private final LoxClass superclass;
 
-    LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
+    LoxClass(String name, int line, LoxClass superclass, Map<String, LoxFunction> methods) {
         this.name = name;
+        this.line = line;
         this.methods = methods;
         this.superclass = superclass;
     }
@@ -21,11 +27,21 @@ public class LoxClass implements LoxCallable {
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object event = LoxEvents.beginInstantiation();
+        int line = interpreter.callLine;
         LoxInstance instance = new LoxInstance(this);
+        AllocationTracker tracker = AllocationTracker.instance;
+        if (tracker != null)
+            tracker.instance(instance, this, line);
+        LoxMetrics metrics = LoxMetrics.instance;
+        if (metrics != null)
+            metrics.instanceCreated(this);
         LoxFunction initializer = findMethod("init");
         if (initializer != null) {
-            initializer.bind(instance).call(interpreter, arguments);
+            initializer.bind(instance, line).call(interpreter, arguments);
         }
+        if (event != null)
+            LoxEvents.endInstantiation(event, this);
         return instance;
     }
 
@@ -0,0 +1,200 @@
+package com.project.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Entry point for embedding Lox. Every execution gets its own {@link Interpreter} and
+ * {@link ExecutionContext}, so one engine can run any number of scripts at the same time on the
+ * executor it was built with, whether that is a fixed pool, a fork-join pool or a
+ * virtual-thread-per-task executor. Scripts that run repeatedly should be compiled once with
+ * {@link #compile} and the resulting {@link CompiledScript} shared between executions. Lox calls
+ * recurse on the Java stack of the thread running the script, so how deep a script can recurse
+ * depends on that thread's stack size; going too deep is reported as a runtime error. Tasks a
+ * script spawns and the parallel natives run on threads the JVM creates with its default stack
+ * size, which only {@code -Xss} changes.
+ */
+public class LoxEngine {
+    private final Executor executor;
+    private volatile ExecutionListener listener;
+    private volatile Coverage coverage;
+    // Shared by every execution while the same listener and coverage are attached, so each script
+    // is instrumented once for all of them.
+    private volatile Instrumentation instrumentation;
+
+    public LoxEngine(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Attaches a listener to every execution this engine starts from now on, or detaches it when
+     * {@code listener} is null. Executions already running keep the listener they started with.
+     * Only the functions the listener observes run slower; see {@link ExecutionListener}.
+     */
+    public synchronized void setListener(ExecutionListener listener) {
+        this.listener = listener;
+        instrumentation = Instrumentation.of(listener, coverage);
+    }
+
+    /**
+     * Counts how often each statement and branch runs in every execution this engine starts from
+     * now on, or stops counting when {@code coverage} is null. Counted scripts run slower, though
+     * far less so than with a listener attached; see {@link Coverage}.
+     */
+    public synchronized void setCoverage(Coverage coverage) {
+        this.coverage = coverage;
+        instrumentation = Instrumentation.of(listener, coverage);
+    }
+
+    private ExecutionContext newContext(OutputSink out, PrintStream err) {
+        ExecutionContext context = new ExecutionContext(out, err);
+        context.instrumentation = instrumentation;
+        return context;
+    }
+
+    /**
+     * Compiles a script, reporting any errors to {@code err}.
+     *
+     * @throws IllegalArgumentException if the script does not compile
+     */
+    public CompiledScript compile(String source, PrintStream err) {
+        CompiledScript script = compile(source, new ExecutionContext(err, err));
+        if (script == null)
+            throw new IllegalArgumentException("Script has compile errors");
+        return script;
+    }
+
+    /** Runs a script on the calling thread. */
+    public ExecutionResult execute(String source, PrintStream out, PrintStream err) {
+        return execute(source, new PrintStreamSink(out), err);
+    }
+
+    /** Runs a script on the calling thread, printing to {@code out} and flushing it at the end. */
+    public ExecutionResult execute(String source, OutputSink out, PrintStream err) {
+        ExecutionContext context = newContext(out, err);
+        try {
+            run(new Interpreter(context), source);
+        } finally {
+            out.flush();
+        }
+        return resultOf(context);
+    }
+
+    /** Runs a compiled script on the calling thread, with fresh globals. */
+    public ExecutionResult execute(CompiledScript script, PrintStream out, PrintStream err) {
+        return execute(script, new PrintStreamSink(out), err);
+    }
+
+    /**
+     * Runs a compiled script on the calling thread, with fresh globals, printing to {@code out}
+     * and flushing it at the end.
+     */
+    public ExecutionResult execute(CompiledScript script, OutputSink out, PrintStream err) {
+        ExecutionContext context = newContext(out, err);
+        try {
+            new Interpreter(context).interpret(script);
+        } finally {
+            out.flush();
+        }
+        return resultOf(context);
+    }
+
+    /**
+     * Runs a prelude and captures the globals it defines, so that later executions can start from
+     * them without running it again.
+     *
+     * @throws IllegalArgumentException if the prelude fails to compile or run
+     * @throws IOException if a global holds a value that cannot be captured, such as a task
+     */
+    public HeapSnapshot snapshot(String prelude, PrintStream out, PrintStream err) throws IOException {
+        ExecutionContext context = newContext(new PrintStreamSink(out), err);
+        Interpreter interpreter = new Interpreter(context);
+        run(interpreter, prelude);
+        if (resultOf(context) != ExecutionResult.OK)
+            throw new IllegalArgumentException("Prelude failed");
+        return HeapSnapshot.capture(interpreter.globals);
+    }
+
+    /**
+     * Runs a compiled script on the calling thread, with a fresh copy of the globals in
+     * {@code globals}, printing to {@code out} and flushing it at the end.
+     *
+     * @throws UncheckedIOException if the snapshot cannot be restored
+     */
+    public ExecutionResult execute(CompiledScript script, HeapSnapshot globals, OutputSink out, PrintStream err) {
+        ExecutionContext context = newContext(out, err);
+        Interpreter interpreter = new Interpreter(context);
+        try {
+            globals.restore(interpreter.globals);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            interpreter.interpret(script);
+        } finally {
+            out.flush();
+        }
+        return resultOf(context);
+    }
+
+    /** Runs a script on this engine's executor. */
+    public CompletableFuture<ExecutionResult> submit(String source, PrintStream out, PrintStream err) {
+        return submit(source, new PrintStreamSink(out), err);
+    }
+
+    /** Runs a script on this engine's executor. */
+    public CompletableFuture<ExecutionResult> submit(String source, OutputSink out, PrintStream err) {
+        return CompletableFuture.supplyAsync(() -> execute(source, out, err), executor);
+    }
+
+    /** Runs a compiled script on this engine's executor, with fresh globals. */
+    public CompletableFuture<ExecutionResult> submit(CompiledScript script, PrintStream out, PrintStream err) {
+        return submit(script, new PrintStreamSink(out), err);
+    }
+
+    /** Runs a compiled script on this engine's executor, with fresh globals. */
+    public CompletableFuture<ExecutionResult> submit(CompiledScript script, OutputSink out, PrintStream err) {
+        return CompletableFuture.supplyAsync(() -> execute(script, out, err), executor);
+    }
+
+    /**
+     * Runs a compiled script on this engine's executor, with a fresh copy of the globals in
+     * {@code globals}.
+     */
+    public CompletableFuture<ExecutionResult> submit(CompiledScript script, HeapSnapshot globals, OutputSink out,
+            PrintStream err) {
+        return CompletableFuture.supplyAsync(() -> execute(script, globals, out, err), executor);
+    }
+
+    static CompiledScript compile(String source, ExecutionContext context) {
+        Scanner scanner = new Scanner(source, context);
+        List<Token> tokens = scanner.scanTokens();
+        Parser parser = new Parser(tokens, context);
+        List<Stmt> statements = parser.parse();
+        if (context.hadError)
+            return null;
+        Resolver resolver = new Resolver(context);
+        resolver.resolve(statements);
+        if (context.hadError)
+            return null;
+        return new CompiledScript(statements, resolver.locals(), resolver.functions(), resolver.slots());
+    }
+
+    static void run(Interpreter interpreter, String source) {
+        CompiledScript script = compile(source, interpreter.context);
+        if (script != null)
+            interpreter.interpret(script);
+    }
+
+    static ExecutionResult resultOf(ExecutionContext context) {
+        if (context.hadError)
+            return ExecutionResult.COMPILE_ERROR;
+        if (context.hadRuntimeError)
+            return ExecutionResult.RUNTIME_ERROR;
+        return ExecutionResult.OK;
+    }
+}
@@ -0,0 +1,57 @@
+package com.project.lox;
+
+/**
+ * Where the interpreter reports calls, errors, instantiations and scripts to Java Flight
+ * Recorder. The events themselves live in {@link JfrEvents}, which needs the {@code jdk.jfr} API
+ * (8u272 or later); this class reaches it only after checking the API is there, so older JVMs run
+ * scripts without events instead of failing with NoClassDefFoundError. Begun events are handed
+ * back as plain objects for the same reason, and are null when nothing is recorded.
+ */
+final class LoxEvents {
+    private static final boolean AVAILABLE = available();
+
+    private LoxEvents() {
+    }
+
+    static boolean recordingCalls() {
+        return AVAILABLE && JfrEvents.recordingCalls();
+    }
+
+    static Object beginCall() {
+        return AVAILABLE ? JfrEvents.beginCall() : null;
+    }
+
+    static void endCall(Object event, Stmt.Function function) {
+        JfrEvents.endCall(event, function);
+    }
+
+    static Object beginInstantiation() {
+        return AVAILABLE ? JfrEvents.beginInstantiation() : null;
+    }
+
+    static void endInstantiation(Object event, LoxClass cls) {
+        JfrEvents.endInstantiation(event, cls);
+    }
+
+    static Object beginScript() {
+        return AVAILABLE ? JfrEvents.beginScript() : null;
+    }
+
+    static void endScript(Object event, ScriptTree script, boolean failed) {
+        JfrEvents.endScript(event, script, failed);
+    }
+
+    static void runtimeError(String message, int line) {
+        if (AVAILABLE)
+            JfrEvents.runtimeError(message, line);
+    }
+
+    private static boolean available() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder", false, LoxEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
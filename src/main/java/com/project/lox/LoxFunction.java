@@ -1,34 +1,123 @@
 package com.project.lox;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.List;
 
-public class LoxFunction implements LoxCallable {
-    private final Stmt.Function declaration;
+public class LoxFunction implements LoxCallable, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // Written as the script and the declaration's position in its tree, see ScriptTree.
+    private transient Stmt.Function declaration;
     private final Memory closure;
     private boolean isInitializer;
+    private transient ScriptTree script;
+    // Calls and loop iterations so far, until the function is hot enough to compile.
+    private transient int hotness;
+    private transient Jit.Compiled compiled;
 
-    LoxFunction(Stmt.Function declaration, Memory closure, boolean isInitializer) {
+    LoxFunction(Stmt.Function declaration, Memory closure, boolean isInitializer, ScriptTree script) {
         this.declaration = declaration;
         this.closure = closure;
         this.isInitializer = isInitializer;
+        this.script = script;
     }
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        Memory memory = new Memory(this.closure);
+        ShadowStack stack = interpreter.shadowStack;
+        LoxMetrics metrics = LoxMetrics.instance;
+        Object event = LoxEvents.beginCall();
+        if (stack == null && metrics == null && event == null)
+            return invoke(interpreter, arguments);
+        long callerCalleeNanos = interpreter.calleeNanos;
+        interpreter.calleeNanos = 0;
+        long start = metrics == null ? 0 : System.nanoTime();
+        // Pushed last, so that running out of stack before the try cannot leave a frame behind.
+        if (stack != null)
+            stack.push(declaration);
+        try {
+            return invoke(interpreter, arguments);
+        } finally {
+            if (metrics != null) {
+                long elapsed = System.nanoTime() - start;
+                metrics.functionCalled(declaration, elapsed - interpreter.calleeNanos);
+                interpreter.calleeNanos = callerCalleeNanos + elapsed;
+            }
+            if (stack != null)
+                stack.pop();
+            if (event != null)
+                LoxEvents.endCall(event, declaration);
+        }
+    }
+
+    // A listener or coverage has to see every call run, so nothing is remembered while either is
+    // attached. Results are keyed on the declaration, so they stay right for as long as the
+    // functions it calls through globals are the ones it was analyzed with; once one has been
+    // redefined, calls run uncached.
+    private Object invoke(Interpreter interpreter, List<Object> arguments) {
+        ExecutionContext context = interpreter.context;
+        Memoizer memoizer = context.memoizer;
+        if (memoizer != null && context.instrumentation == null && script.isPureIn(declaration, closure))
+            return memoizer.call(declaration, arguments, () -> execute(interpreter, arguments));
+        return execute(interpreter, arguments);
+    }
+
+    private Object execute(Interpreter interpreter, List<Object> arguments) {
+        Jit.Compiled compiled = this.compiled;
+        boolean jit = jitEnabled(interpreter);
+        if (compiled != null && jit) {
+            Object result = compiled.call(closure, arguments);
+            if (result != Jit.DEOPT)
+                return result;
+        } else if (compiled == null && jit && ++hotness >= interpreter.context.jitThreshold) {
+            this.compiled = script.compiled(declaration);
+        }
+        long loopIterations = interpreter.loopIterations;
+        boolean pooled = declaration.frameReusable;
+        Memory memory = pooled ? interpreter.frames.acquire(closure) : new Memory(closure);
         for (int i = 0; i < declaration.params.size(); i++) {
             memory.define(declaration.params.get(i).lexeme, arguments.get(i));
         }
         try {
-            interpreter.executeBlock(declaration.body, memory);
+            interpreter.executeFunction(declaration, memory, script);
         } catch (Return returnValue) {
             if (isInitializer)
                 return closure.getAt(0, "this");
             return returnValue.value;
+        } finally {
+            if (pooled)
+                interpreter.frames.release(memory);
+            if (this.compiled == null)
+                hotness += (int) Math.min(interpreter.loopIterations - loopIterations, Jit.THRESHOLD);
         }
         return null;
     }
 
+    // Calls made by compiled code skip the memoizer, never reach the profiler's stack, are not
+    // counted or timed by metrics, emit no Flight Recorder events and report nothing to a listener.
+    // Metrics and recordings can start while a script runs, so code already compiled is checked too;
+    // once a recording of calls stops, compiled code runs again.
+    private static boolean jitEnabled(Interpreter interpreter) {
+        ExecutionContext context = interpreter.context;
+        return context.jit && context.memoizer == null && interpreter.shadowStack == null
+                && context.instrumentation == null && LoxMetrics.instance == null && !LoxEvents.recordingCalls();
+    }
+
+    boolean isCompiled() {
+        return compiled != null && compiled != Jit.NOT_COMPILED;
+    }
+
+    boolean isDeclaredBy(Stmt.Function function) {
+        return declaration == function;
+    }
+
+    Stmt.Function declaration() {
+        return declaration;
+    }
+
     @Override
     public int arity() {
         return declaration.params.size();
@@ -39,10 +128,26 @@ public class LoxFunction implements LoxCallable {
         return "<fn " + declaration.name.lexeme + ">";
     }
 
-    public LoxFunction bind(LoxInstance instance) {
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(script.script);
+        out.writeInt(script.functions.indexOf(declaration));
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        script = ((CompiledScript) in.readObject()).tree();
+        declaration = script.functions.get(in.readInt());
+    }
+
+    public LoxFunction bind(LoxInstance instance, int line) {
         Memory memory = new Memory(closure);
         memory.define("this", instance);
-        return new LoxFunction(declaration, memory, isInitializer);
+        LoxFunction method = new LoxFunction(declaration, memory, isInitializer, script);
+        AllocationTracker tracker = AllocationTracker.instance;
+        if (tracker != null)
+            tracker.boundMethod(method, declaration.name.lexeme, line);
+        return method;
     }
 
 }
\ No newline at end of file
@@ -1,11 +1,26 @@
 package com.project.lox;
 
-import java.util.HashMap;
+import java.io.Serializable;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fields may be read and written from several tasks at once. Each read or write of a field is
+ * atomic, and a read sees the most recent write to that field from any task.
+ */
+public class LoxInstance implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // ConcurrentHashMap cannot hold null, so a nil field is stored as this marker. It is an enum
+    // so that it is still the same marker after the instance has been through serialization.
+    private enum Nil {
+        NIL
+    }
+
+    private static final Object NIL = Nil.NIL;
 
-public class LoxInstance {
     private LoxClass cls;
-    private final Map<String, Object> fields = new HashMap<>();
+    private final Map<String, Object> fields = new ConcurrentHashMap<>();
 
     LoxInstance(LoxClass cls) {
         this.cls = cls;
@@ -17,17 +32,18 @@ public class LoxInstance {
     }
 
     public Object get(Token name) {
-        if (fields.containsKey(name.lexeme)) {
-            return fields.get(name.lexeme);
+        Object value = fields.get(name.lexeme);
+        if (value != null) {
+            return value == NIL ? null : value;
         }
         LoxFunction method = cls.findMethod(name.lexeme);
         if (method != null)
-            return method.bind(this);
+            return method.bind(this, name.line);
         throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'");
     }
 
     public void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+        fields.put(name.lexeme, value == null ? NIL : value);
 
     }
 }
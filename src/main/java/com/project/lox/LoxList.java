@@ -0,0 +1,116 @@
+package com.project.lox;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Built-in growable list, indexed from zero. Tasks may share a list: every operation holds the
+ * list's lock, so each one is atomic and sees the others whole.
+ */
+class LoxList implements NativeObject, Serializable {
+    private static final long serialVersionUID = 1L;
+    // Indexes of the bound methods in methods.
+    private static final int ADD = 0;
+    private static final int GET = 1;
+    private static final int SET = 2;
+    private static final int SIZE = 3;
+    private static final int METHODS = 4;
+
+    private final List<Object> elements;
+    private transient NativeFunction[] methods;
+
+    LoxList() {
+        this(new ArrayList<>());
+    }
+
+    LoxList(List<Object> elements) {
+        this.elements = elements;
+    }
+
+    /** A copy of the elements as they are now, for natives that work through a whole list. */
+    synchronized List<Object> snapshot() {
+        return new ArrayList<>(elements);
+    }
+
+    // Callers hold the lock, so the index stays in range until they use it.
+    private int index(Object index) {
+        if (!(index instanceof Double) || (double) index % 1 != 0) {
+            throw new NativeError("List index must be an integer");
+        }
+        double value = (double) index;
+        if (value < 0 || value >= elements.size()) {
+            throw new NativeError("List index out of range");
+        }
+        return (int) value;
+    }
+
+    @Override
+    public Object get(Token name) {
+        switch (name.lexeme) {
+            case "add":
+                return method(ADD);
+            case "get":
+                return method(GET);
+            case "set":
+                return method(SET);
+            case "size":
+                return method(SIZE);
+            default:
+                throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'");
+        }
+    }
+
+    // Bound on first use and kept, like the methods of LoxMap.
+    private NativeFunction method(int method) {
+        NativeFunction[] methods = this.methods;
+        if (methods == null)
+            this.methods = methods = new NativeFunction[METHODS];
+        NativeFunction function = methods[method];
+        if (function == null)
+            methods[method] = function = bind(method);
+        return function;
+    }
+
+    private NativeFunction bind(int method) {
+        switch (method) {
+            case ADD:
+                return new NativeFunction("add", 1, (interpreter, arguments) -> {
+                    synchronized (this) {
+                        elements.add(arguments.get(0));
+                    }
+                    return null;
+                });
+            case GET:
+                return new NativeFunction("get", 1, (interpreter, arguments) -> {
+                    synchronized (this) {
+                        return elements.get(index(arguments.get(0)));
+                    }
+                });
+            case SET:
+                return new NativeFunction("set", 2, (interpreter, arguments) -> {
+                    synchronized (this) {
+                        elements.set(index(arguments.get(0)), arguments.get(1));
+                    }
+                    return arguments.get(1);
+                });
+            default:
+                return new NativeFunction("size", 0, (interpreter, arguments) -> {
+                    synchronized (this) {
+                        return (double) elements.size();
+                    }
+                });
+        }
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+    }
+
+    @Override
+    public String toString() {
+        return "<list>";
+    }
+}
@@ -0,0 +1,293 @@
+package com.project.lox;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Built-in map type. Entries live in an open-addressing table with linear probing, so a lookup is
+ * a walk over three flat arrays instead of chasing {@code HashMap} nodes. Keys compare the way
+ * {@code ==} does in Lox: numbers, strings and booleans by value, instances and callables by
+ * identity. The cached hash of every slot lets a probe skip non-matching keys without calling
+ * {@code equals}. Instances hash by identity, which does not survive serialization, so a map is
+ * written as its entries and rebuilt when read.
+ *
+ * <p>Tasks may share a map: every operation holds the map's lock, so each one is atomic and sees
+ * the others whole. {@code forEach} copies the entries under the lock and runs the callback
+ * without it, so a callback may use the map, and other maps, freely.
+ */
+class LoxMap implements NativeObject, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_CAPACITY = 16;
+    // Indexes of the bound methods in methods.
+    private static final int GET = 0;
+    private static final int GET_OR_DEFAULT = 1;
+    private static final int SET = 2;
+    private static final int HAS = 3;
+    private static final int REMOVE = 4;
+    private static final int SIZE = 5;
+    private static final int CLEAR = 6;
+    private static final int KEYS = 7;
+    private static final int FOR_EACH = 8;
+    private static final int METHODS = 9;
+
+    private transient Object[] keys = new Object[INITIAL_CAPACITY];
+    private transient Object[] values = new Object[INITIAL_CAPACITY];
+    private transient int[] hashes = new int[INITIAL_CAPACITY];
+    private transient int mask = INITIAL_CAPACITY - 1;
+    private transient int size = 0;
+    private transient NativeFunction[] methods;
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized Object get(Object key) {
+        int index = find(key);
+        return index < 0 ? null : values[index];
+    }
+
+    synchronized Object getOrDefault(Object key, Object otherwise) {
+        int index = find(key);
+        return index < 0 ? otherwise : values[index];
+    }
+
+    synchronized boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    synchronized void put(Object key, Object value) {
+        int hash = hash(key);
+        int index = hash & mask;
+        Object candidate;
+        while ((candidate = keys[index]) != null) {
+            if (hashes[index] == hash && (candidate == key || candidate.equals(key))) {
+                values[index] = value;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        hashes[index] = hash;
+        size++;
+        // Keep the load factor under 2/3 so probe sequences stay short.
+        if (size * 3 > keys.length * 2) {
+            resize(keys.length << 1);
+        }
+    }
+
+    synchronized Object remove(Object key) {
+        int index = find(key);
+        if (index < 0)
+            return null;
+        Object removed = values[index];
+        // Backward-shift deletion: pull later entries of the cluster into the hole so that no
+        // tombstones are needed and lookups never probe past a deleted slot.
+        int hole = index;
+        int next = (hole + 1) & mask;
+        while (keys[next] != null) {
+            int home = hashes[next] & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hashes[hole] = hashes[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = null;
+        values[hole] = null;
+        hashes[hole] = 0;
+        size--;
+        return removed;
+    }
+
+    synchronized void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    // Entries added or removed by the callback, or by other tasks, during the walk are not seen.
+    void forEach(Interpreter interpreter, LoxCallable function) {
+        Object[] entries;
+        synchronized (this) {
+            entries = new Object[size * 2];
+            int next = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) {
+                    entries[next++] = keys[i];
+                    entries[next++] = values[i];
+                }
+            }
+        }
+        for (int i = 0; i < entries.length; i += 2) {
+            function.call(interpreter, Arrays.asList(entries[i], entries[i + 1]));
+        }
+    }
+
+    synchronized LoxList keys() {
+        List<Object> result = new ArrayList<>(size);
+        for (Object key : keys) {
+            if (key != null)
+                result.add(key);
+        }
+        return new LoxList(result);
+    }
+
+    private int find(Object key) {
+        int hash = hash(key);
+        int index = hash & mask;
+        Object candidate;
+        while ((candidate = keys[index]) != null) {
+            if (hashes[index] == hash && (candidate == key || candidate.equals(key))) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void resize(int capacity) {
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] oldHashes = hashes;
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        hashes = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null)
+                continue;
+            int index = oldHashes[i] & mask;
+            while (keys[index] != null) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = oldKeys[i];
+            values[index] = oldValues[i];
+            hashes[index] = oldHashes[i];
+        }
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                out.writeObject(keys[i]);
+                out.writeObject(values[i]);
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        keys = new Object[INITIAL_CAPACITY];
+        values = new Object[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
+        mask = INITIAL_CAPACITY - 1;
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            put(in.readObject(), in.readObject());
+        }
+    }
+
+    // Double.hashCode() leaves the low bits of small integral values all zero, so mix every
+    // hash (murmur3 finalizer) before masking it down to a slot index.
+    static int hash(Object key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static Object key(Object key) {
+        if (key == null)
+            throw new NativeError("Map keys cannot be nil");
+        return key;
+    }
+
+    @Override
+    public Object get(Token name) {
+        switch (name.lexeme) {
+            case "get":
+                return method(GET);
+            case "getOrDefault":
+                return method(GET_OR_DEFAULT);
+            case "set":
+                return method(SET);
+            case "has":
+                return method(HAS);
+            case "remove":
+                return method(REMOVE);
+            case "size":
+                return method(SIZE);
+            case "clear":
+                return method(CLEAR);
+            case "keys":
+                return method(KEYS);
+            case "forEach":
+                return method(FOR_EACH);
+            default:
+                throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'");
+        }
+    }
+
+    // Methods are bound on first use and kept, so calling one in a loop allocates nothing. Threads
+    // that race to bind the same method get equivalent functions.
+    private NativeFunction method(int method) {
+        NativeFunction[] methods = this.methods;
+        if (methods == null)
+            this.methods = methods = new NativeFunction[METHODS];
+        NativeFunction function = methods[method];
+        if (function == null)
+            methods[method] = function = bind(method);
+        return function;
+    }
+
+    private NativeFunction bind(int method) {
+        switch (method) {
+            case GET:
+                return new NativeFunction("get", 1, (interpreter, arguments) -> get(key(arguments.get(0))));
+            case GET_OR_DEFAULT:
+                return new NativeFunction("getOrDefault", 2,
+                        (interpreter, arguments) -> getOrDefault(key(arguments.get(0)), arguments.get(1)));
+            case SET:
+                return new NativeFunction("set", 2, (interpreter, arguments) -> {
+                    put(key(arguments.get(0)), arguments.get(1));
+                    return arguments.get(1);
+                });
+            case HAS:
+                return new NativeFunction("has", 1,
+                        (interpreter, arguments) -> containsKey(key(arguments.get(0))));
+            case REMOVE:
+                return new NativeFunction("remove", 1, (interpreter, arguments) -> remove(key(arguments.get(0))));
+            case SIZE:
+                return new NativeFunction("size", 0, (interpreter, arguments) -> (double) size());
+            case CLEAR:
+                return new NativeFunction("clear", 0, (interpreter, arguments) -> {
+                    clear();
+                    return null;
+                });
+            case KEYS:
+                return new NativeFunction("keys", 0, (interpreter, arguments) -> keys());
+            default:
+                return new NativeFunction("forEach", 1, (interpreter, arguments) -> {
+                    forEach(interpreter, Interpreter.callable(arguments.get(0), 2));
+                    return null;
+                });
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<map>";
+    }
+}
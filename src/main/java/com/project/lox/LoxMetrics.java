@@ -0,0 +1,174 @@
+package com.project.lox;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide interpreter counters: calls and self time per Lox function, instances per
+ * class, environment allocations and hit/miss counts of named caches. Everything is a
+ * {@link LongAdder}, so interpreters on many threads can record at once without contending on a
+ * shared cache line. Recording is off, and costs a single field read, until {@link #enable} is
+ * called.
+ */
+public final class LoxMetrics implements LoxMetricsMXBean {
+    static volatile LoxMetrics instance = null;
+
+    private final Map<Stmt.Function, FunctionStats> functions = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> instances = new ConcurrentHashMap<>();
+    private final LongAdder memoryAllocations = new LongAdder();
+    private final Map<String, CacheStats> caches = new ConcurrentHashMap<>();
+
+    LoxMetrics() {
+    }
+
+    /** Turns recording on and registers the MXBean. Calling it again returns the same instance. */
+    public static synchronized LoxMetrics enable() {
+        if (instance == null) {
+            LoxMetrics metrics = new LoxMetrics();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+                        new ObjectName("com.project.lox:type=Metrics"));
+            } catch (JMException e) {
+                throw new IllegalStateException("Could not register metrics MXBean", e);
+            }
+            instance = metrics;
+        }
+        return instance;
+    }
+
+    /** Prints {@link #dump()} to {@code out} every {@code periodSeconds} on a daemon thread. */
+    public void dumpPeriodically(PrintStream out, long periodSeconds) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lox-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> out.print(dump()), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    static final class FunctionStats {
+        final LongAdder calls = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+    }
+
+    static final class CacheStats {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+
+        void hit() {
+            hits.increment();
+        }
+
+        void miss() {
+            misses.increment();
+        }
+    }
+
+    void functionCalled(Stmt.Function function, long selfNanos) {
+        FunctionStats stats = functions.computeIfAbsent(function, key -> new FunctionStats());
+        stats.calls.increment();
+        stats.nanos.add(selfNanos);
+    }
+
+    void instanceCreated(LoxClass cls) {
+        instances.computeIfAbsent(cls.name + ":" + cls.line, key -> new LongAdder()).increment();
+    }
+
+    void memoryAllocated() {
+        memoryAllocations.increment();
+    }
+
+    /** Returns the counters for the cache with the given name, creating them on first use. */
+    CacheStats cache(String name) {
+        return caches.computeIfAbsent(name, key -> new CacheStats());
+    }
+
+    private static String label(Stmt.Function function) {
+        return function.name.lexeme + ":" + function.name.line;
+    }
+
+    private Map<String, Long> functionTotals(ToLongFunction<FunctionStats> counter) {
+        Map<String, Long> totals = new TreeMap<>();
+        functions.forEach((function, stats) -> totals.merge(label(function), counter.applyAsLong(stats), Long::sum));
+        return totals;
+    }
+
+    private static Map<String, Long> totals(Map<String, LongAdder> adders) {
+        Map<String, Long> totals = new TreeMap<>();
+        adders.forEach((name, adder) -> totals.put(name, adder.sum()));
+        return totals;
+    }
+
+    private Map<String, Long> cacheTotals(ToLongFunction<CacheStats> counter) {
+        Map<String, Long> totals = new TreeMap<>();
+        caches.forEach((name, stats) -> totals.put(name, counter.applyAsLong(stats)));
+        return totals;
+    }
+
+    @Override
+    public Map<String, Long> getFunctionCalls() {
+        return functionTotals(stats -> stats.calls.sum());
+    }
+
+    @Override
+    public Map<String, Long> getFunctionSelfTimeNanos() {
+        return functionTotals(stats -> stats.nanos.sum());
+    }
+
+    @Override
+    public Map<String, Long> getInstanceCounts() {
+        return totals(instances);
+    }
+
+    @Override
+    public long getMemoryAllocations() {
+        return memoryAllocations.sum();
+    }
+
+    @Override
+    public Map<String, Long> getCacheHits() {
+        return cacheTotals(stats -> stats.hits.sum());
+    }
+
+    @Override
+    public Map<String, Long> getCacheMisses() {
+        return cacheTotals(stats -> stats.misses.sum());
+    }
+
+    // Each function and cache is read once, so one registered while dumping cannot appear in only
+    // one of its two columns.
+    @Override
+    public String dump() {
+        StringBuilder out = new StringBuilder("== lox metrics ==\n");
+        Map<String, long[]> functionTotals = new TreeMap<>();
+        functions.forEach((function, stats) -> {
+            long[] totals = functionTotals.computeIfAbsent(label(function), key -> new long[2]);
+            totals[0] += stats.calls.sum();
+            totals[1] += stats.nanos.sum();
+        });
+        functionTotals.forEach((function, totals) -> out.append(
+                String.format("function %-30s calls %12d  self %10.3f ms%n", function, totals[0], totals[1] / 1e6)));
+        getInstanceCounts().forEach(
+                (cls, count) -> out.append(String.format("class    %-30s instances %8d%n", cls, count)));
+        out.append(String.format("memory   environments allocated %d%n", getMemoryAllocations()));
+        new TreeMap<>(caches).forEach((cache, stats) -> {
+            long hits = stats.hits.sum();
+            long misses = stats.misses.sum();
+            long total = hits + misses;
+            out.append(String.format("cache    %-30s hits %12d  misses %12d  hit rate %5.1f%%%n", cache, hits,
+                    misses, total == 0 ? 0.0 : 100.0 * hits / total));
+        });
+        return out.toString();
+    }
+}
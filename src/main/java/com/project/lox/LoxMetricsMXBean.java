@@ -0,0 +1,24 @@
+package com.project.lox;
+
+import java.util.Map;
+
+/**
+ * Management view of {@link LoxMetrics}, registered as {@code com.project.lox:type=Metrics}.
+ * Function and class keys are {@code name:line} of the declaration; times are self time,
+ * excluding the time spent in other Lox functions it calls.
+ */
+public interface LoxMetricsMXBean {
+    Map<String, Long> getFunctionCalls();
+
+    Map<String, Long> getFunctionSelfTimeNanos();
+
+    Map<String, Long> getInstanceCounts();
+
+    long getMemoryAllocations();
+
+    Map<String, Long> getCacheHits();
+
+    Map<String, Long> getCacheMisses();
+
+    String dump();
+}
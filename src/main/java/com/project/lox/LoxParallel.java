@@ -0,0 +1,151 @@
+package com.project.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Data-parallel natives over lists. The list is cut into leaves that up to one pooled thread per
+ * processor take in turn while the caller waits; the threads have the stack size of the caller's
+ * context (see {@link LoxThreads}), so callbacks recurse as deep as the script. Each thread gets
+ * its own {@link Interpreter} sharing the caller's globals, so the callback runs with a private
+ * frame stack, and the leaves' results are combined in order on the caller's thread.
+ *
+ * <p>The callback is invoked in no particular order and from several threads at once. It should
+ * only depend on its arguments: assigning to variables outside itself is a data race, and
+ * anything it prints may be interleaved. {@code parallelReduce} additionally needs an associative
+ * callback and an initial value that is its identity, because each leaf starts from that value
+ * and the partial results are combined with the same callback.
+ */
+final class LoxParallel {
+    // Aim for several leaves per worker so that uneven callbacks still balance.
+    private static final int LEAVES_PER_WORKER = 8;
+
+    private LoxParallel() {
+    }
+
+    static LoxList map(Interpreter parent, List<Object> elements, LoxCallable function) {
+        Object[] results = new Object[elements.size()];
+        run(parent, elements.size(), new Work() {
+            @Override
+            public Object leaf(Interpreter interpreter, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    results[i] = function.call(interpreter, Collections.singletonList(elements.get(i)));
+                }
+                return null;
+            }
+
+            @Override
+            public Object combine(Object left, Object right) {
+                return null;
+            }
+        });
+        return new LoxList(new ArrayList<>(Arrays.asList(results)));
+    }
+
+    @SuppressWarnings("unchecked")
+    static LoxList filter(Interpreter parent, List<Object> elements, LoxCallable function) {
+        Object kept = run(parent, elements.size(), new Work() {
+            @Override
+            public Object leaf(Interpreter interpreter, int from, int to) {
+                List<Object> kept = new ArrayList<>();
+                for (int i = from; i < to; i++) {
+                    Object element = elements.get(i);
+                    if (Interpreter.isTruthy(function.call(interpreter, Collections.singletonList(element)))) {
+                        kept.add(element);
+                    }
+                }
+                return kept;
+            }
+
+            @Override
+            public Object combine(Object left, Object right) {
+                ((List<Object>) left).addAll((List<Object>) right);
+                return left;
+            }
+        });
+        return new LoxList((List<Object>) kept);
+    }
+
+    static Object reduce(Interpreter parent, List<Object> elements, LoxCallable function, Object initial) {
+        if (elements.isEmpty())
+            return initial;
+        return run(parent, elements.size(), new Work() {
+            @Override
+            public Object leaf(Interpreter interpreter, int from, int to) {
+                Object accumulator = initial;
+                for (int i = from; i < to; i++) {
+                    accumulator = function.call(interpreter, Arrays.asList(accumulator, elements.get(i)));
+                }
+                return accumulator;
+            }
+
+            @Override
+            public Object combine(Object left, Object right) {
+                return function.call(new Interpreter(parent), Arrays.asList(left, right));
+            }
+        });
+    }
+
+    // The pool starts threads as needed, so a parallel call nested in a callback never waits for
+    // a thread that is itself waiting.
+    private static Object run(Interpreter parent, int size, Work work) {
+        int workers = Runtime.getRuntime().availableProcessors();
+        int leaves = Math.max(1, Math.min(size, workers * LEAVES_PER_WORKER));
+        Object[] results = new Object[leaves];
+        AtomicInteger next = new AtomicInteger();
+        Callable<Void> runner = () -> {
+            Interpreter interpreter = new Interpreter(parent);
+            try {
+                for (int leaf = next.getAndIncrement(); leaf < leaves; leaf = next.getAndIncrement()) {
+                    int from = (int) ((long) size * leaf / leaves);
+                    int to = (int) ((long) size * (leaf + 1) / leaves);
+                    results[leaf] = work.leaf(interpreter, from, to);
+                }
+            } catch (RuntimeException | Error e) {
+                // Leaves nobody has started yet are skipped.
+                next.set(leaves);
+                throw e;
+            }
+            return null;
+        };
+        ExecutorService pool = LoxThreads.pool(parent.context.stackSize);
+        List<Future<Void>> runners = new ArrayList<>();
+        for (int i = 0; i < Math.min(workers, leaves); i++) {
+            runners.add(pool.submit(runner));
+        }
+        Throwable failure = null;
+        for (Future<Void> running : runners) {
+            try {
+                running.get();
+            } catch (ExecutionException e) {
+                if (failure == null)
+                    failure = e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NativeError("Interrupted while waiting for parallel work");
+            }
+        }
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+        if (failure != null)
+            throw (Error) failure;
+        Object result = results[0];
+        for (int i = 1; i < leaves; i++) {
+            result = work.combine(result, results[i]);
+        }
+        return result;
+    }
+
+    private interface Work {
+        Object leaf(Interpreter interpreter, int from, int to);
+
+        Object combine(Object left, Object right);
+    }
+}
@@ -0,0 +1,71 @@
+package com.project.lox;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A function running concurrently with the script that spawned it. Each task gets its own
+ * {@link Interpreter}, and therefore its own frame stack, but shares the globals and every heap
+ * object with its parent. A task runs on a pooled thread with the stack size of its context, as
+ * set by {@code --stack-size}, and otherwise on a virtual thread where the JVM has them.
+ */
+class LoxTask implements NativeObject {
+    private static final ExecutorService executor = createExecutor();
+
+    private final Future<Object> result;
+
+    LoxTask(Interpreter parent, LoxCallable function) {
+        Interpreter interpreter = new Interpreter(parent);
+        long stackSize = parent.context.stackSize;
+        result = (stackSize == 0 ? executor : LoxThreads.pool(stackSize))
+                .submit(() -> function.call(interpreter, Collections.emptyList()));
+    }
+
+    // The build targets Java 8, so virtual threads are looked up reflectively and used whenever
+    // the running JVM has them. Older JVMs fall back to a pool of daemon platform threads.
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "lox-task");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    Object join() {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NativeError("Interrupted while waiting for a task");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeError) {
+                throw (RuntimeError) e.getCause();
+            }
+            throw new NativeError("Task failed: " + e.getCause());
+        }
+    }
+
+    @Override
+    public Object get(Token name) {
+        switch (name.lexeme) {
+            case "join":
+                return new NativeFunction("join", 0, (interpreter, arguments) -> join());
+            case "isDone":
+                return new NativeFunction("isDone", 0, (interpreter, arguments) -> result.isDone());
+            default:
+                throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<task>";
+    }
+}
@@ -0,0 +1,28 @@
+package com.project.lox;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Pools of daemon threads with a given stack size, for the tasks and parallel natives of scripts
+ * run with {@code --stack-size}, so that they recurse as deep as the script itself. Each pool
+ * grows as needed and lets idle threads go; a thread's stack is reserved when it starts but only
+ * backed by memory as deep as the code on it actually goes.
+ */
+final class LoxThreads {
+    private static final Map<Long, ExecutorService> pools = new ConcurrentHashMap<>();
+
+    private LoxThreads() {
+    }
+
+    /** A pool whose threads have {@code stackSize} bytes of stack, or the JVM's default for 0. */
+    static ExecutorService pool(long stackSize) {
+        return pools.computeIfAbsent(stackSize, size -> Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(null, runnable, "lox-worker", size);
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+}
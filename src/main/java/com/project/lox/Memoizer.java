@@ -0,0 +1,77 @@
+package com.project.lox;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the results of calls to pure functions (see {@link Purity}), keyed on the function
+ * and its arguments. Arguments match the way map keys do: numbers, strings and booleans by value,
+ * instances and callables by identity. Once the cache is full, each new result evicts the least
+ * recently used one.
+ */
+final class Memoizer {
+    private static final Object MISSING = new Object();
+
+    private static final class Key {
+        final Stmt.Function function;
+        final List<Object> arguments;
+        final int hash;
+
+        Key(Stmt.Function function, List<Object> arguments) {
+            this.function = function;
+            this.arguments = arguments;
+            this.hash = 31 * System.identityHashCode(function) + arguments.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key))
+                return false;
+            Key key = (Key) other;
+            return function == key.function && arguments.equals(key.arguments);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final Map<Key, Object> results;
+
+    Memoizer(int capacity) {
+        this.results = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    // The lock is not held while the function runs, so a recursive function can fill in the
+    // results it depends on, and two tasks asking for the same missing result may both compute it.
+    Object call(Stmt.Function function, List<Object> arguments, Supplier<Object> body) {
+        Key key = new Key(function, arguments);
+        Object result;
+        synchronized (results) {
+            result = results.getOrDefault(key, MISSING);
+        }
+        LoxMetrics metrics = LoxMetrics.instance;
+        if (result != MISSING) {
+            if (metrics != null)
+                metrics.cache("memoize").hit();
+            return result;
+        }
+        if (metrics != null)
+            metrics.cache("memoize").miss();
+        result = body.get();
+        synchronized (results) {
+            results.put(key, result);
+        }
+        return result;
+    }
+}
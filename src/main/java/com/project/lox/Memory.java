@@ -1,18 +1,34 @@
 package com.project.lox;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 
-class Memory {
-    final Memory enclosing;
+class Memory implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // Only changed when a pooled frame is reused, see FramePool.
+    Memory enclosing;
     private final Map<String, Object> values = new HashMap<>();
 
     Memory() {
-        enclosing = null;
+        this(null);
     }
 
     Memory(Memory enclosing) {
         this.enclosing = enclosing;
+        LoxMetrics metrics = LoxMetrics.instance;
+        if (metrics != null)
+            metrics.memoryAllocated();
+    }
+
+    void reuse(Memory enclosing) {
+        this.enclosing = enclosing;
+        values.clear();
+    }
+
+    Map<String, Object> bindings() {
+        return values;
     }
 
     void define(String name, Object value) {
@@ -0,0 +1,13 @@
+package com.project.lox;
+
+/**
+ * Thrown by natives, which have no token of their own. The interpreter turns it
+ * into a {@link RuntimeError} at the call site that invoked the native.
+ */
+class NativeError extends RuntimeException {
+    private static final long serialVersionUID = 4216914309716585147L;
+
+    NativeError(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,49 @@
+package com.project.lox;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+class NativeFunction implements LoxCallable {
+    interface Body {
+        Object call(Interpreter interpreter, List<Object> arguments);
+    }
+
+    // One key per name and arity, see LoxCallSite.
+    private static final Map<String, Object> keys = new ConcurrentHashMap<>();
+
+    final String name;
+    private final int arity;
+    private final Body body;
+    private Object key;
+
+    NativeFunction(String name, int arity, Body body) {
+        this.name = name;
+        this.arity = arity;
+        this.body = body;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return body.call(interpreter, arguments);
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    // Looked up on first use only, as most natives a script creates are never called from a site
+    // that caches. Threads that race here find the same key.
+    Object key() {
+        Object key = this.key;
+        if (key == null)
+            this.key = key = keys.computeIfAbsent(name + "/" + arity, k -> new Object());
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return "<native function>";
+    }
+}
@@ -0,0 +1,8 @@
+package com.project.lox;
+
+/**
+ * A runtime value implemented in Java whose properties are native methods.
+ */
+interface NativeObject {
+    Object get(Token name);
+}
@@ -0,0 +1,16 @@
+package com.project.lox;
+
+/**
+ * Where an execution's {@code print} statements and runtime error messages go. Sinks may be
+ * written from several tasks at once. Output may be buffered until {@link #flush} or
+ * {@link #close}, which the engine calls when a script finishes.
+ */
+public interface OutputSink {
+    void println(String line);
+
+    void flush();
+
+    default void close() {
+        flush();
+    }
+}
@@ -6,14 +6,16 @@ import java.util.List;
 
 class Parser {
     private final List<Token> tokens;
+    private final ExecutionContext context;
     private int current = 0;
 
     private static class ParseError extends RuntimeException {
         private static final long serialVersionUID = -8844227722959357629L;
     }
 
-    Parser(List<Token> tokens) {
+    Parser(List<Token> tokens, ExecutionContext context) {
         this.tokens = tokens;
+        this.context = context;
     }
 
     List<Stmt> parse() {
@@ -341,7 +343,7 @@ class Parser {
     }
 
     private ParseError error(Token token, String message) {
-        Lox.error(token, message);
+        context.error(token, message);
         return new ParseError();
     }
 
@@ -384,21 +386,20 @@ class Parser {
         while (!isAtEnd()) {
             if (previous().type == TokenType.SEMICOLON)
                 return;
+            switch (peek().type) {
+                case CLASS:
+                case FUN:
+                case VAR:
+                case FOR:
+                case IF:
+                case WHILE:
+                case PRINT:
+                case RETURN:
+                    return;
+                default:
+                    break;
+            }
+            advance();
         }
-        switch (peek().type) {
-            case CLASS:
-            case FUN:
-            case VAR:
-            case FOR:
-            case IF:
-            case WHILE:
-            case PRINT:
-            case RETURN:
-                return;
-            default:
-                break;
-        }
-        advance();
     }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,24 @@
+package com.project.lox;
+
+import java.io.PrintStream;
+
+/**
+ * Writes each line straight to a {@link PrintStream}, the way print has always behaved.
+ */
+public final class PrintStreamSink implements OutputSink {
+    private final PrintStream out;
+
+    public PrintStreamSink(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void println(String line) {
+        out.println(line);
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+}
@@ -0,0 +1,79 @@
+package com.project.lox;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Sampling profiler for Lox functions. Every interpreter of a profiled execution keeps a
+ * {@link ShadowStack}; a background thread snapshots all of them at a fixed interval and counts
+ * identical stacks. The result is written in the collapsed-stack format that flamegraph tools
+ * read: one {@code frame;frame;frame count} line per distinct stack.
+ */
+final class Profiler {
+    private final long intervalMillis;
+    private final Queue<WeakReference<ShadowStack>> stacks = new ConcurrentLinkedQueue<>();
+    private final Map<String, Long> samples = new TreeMap<>();
+    private final Thread sampler;
+    private volatile boolean running = true;
+
+    Profiler(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+        sampler = new Thread(this::sample, "lox-profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    ShadowStack newStack() {
+        ShadowStack stack = new ShadowStack();
+        stacks.add(new WeakReference<>(stack));
+        return stack;
+    }
+
+    private void sample() {
+        while (running) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            synchronized (samples) {
+                for (Iterator<WeakReference<ShadowStack>> it = stacks.iterator(); it.hasNext();) {
+                    ShadowStack stack = it.next().get();
+                    if (stack == null) {
+                        it.remove();
+                        continue;
+                    }
+                    String collapsed = stack.collapse();
+                    if (collapsed != null) {
+                        samples.merge(collapsed, 1L, Long::sum);
+                    }
+                }
+            }
+        }
+    }
+
+    void stop() {
+        running = false;
+        sampler.interrupt();
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void write(Writer out) throws IOException {
+        synchronized (samples) {
+            for (Map.Entry<String, Long> entry : samples.entrySet()) {
+                out.write(entry.getKey() + " " + entry.getValue() + "\n");
+            }
+        }
+        out.flush();
+    }
+}
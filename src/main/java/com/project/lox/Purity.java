@@ -0,0 +1,260 @@
+package com.project.lox;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the functions of a script whose result depends on nothing but their arguments. A function
+ * qualifies when it is declared once at the top level, nothing assigns to its name, and its body
+ * prints nothing, reads or writes no fields, assigns only its own locals, declares no functions or
+ * classes, and reads no globals except other functions that qualify. Calls to natives disqualify
+ * a function: clock reads the time, and the constructors return new mutable objects.
+ *
+ * <p>Purity holds only while the globals a function reads still hold the functions this script
+ * declared under those names; a later script or a restored snapshot may replace them. So each
+ * pure function comes with every function it reaches through globals, itself included, for
+ * callers to check before trusting an earlier result.
+ */
+final class Purity implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private final Map<Expr, Integer> locals;
+    private final Map<String, Integer> declarations = new HashMap<>();
+    private final Set<String> assigned = new HashSet<>();
+    // The globals read by each function whose body passed on its own.
+    private final Map<Stmt.Function, Set<String>> candidates = new HashMap<>();
+    private Set<String> reads;
+    private boolean pure;
+
+    private Purity(Map<Expr, Integer> locals) {
+        this.locals = locals;
+    }
+
+    static Map<Stmt.Function, Stmt.Function[]> analyze(ScriptTree script) {
+        Purity purity = new Purity(script.locals);
+        for (Stmt statement : script.statements) {
+            purity.topLevel(statement);
+        }
+        return purity.pureFunctions();
+    }
+
+    private void topLevel(Stmt statement) {
+        if (statement instanceof Stmt.Function) {
+            Stmt.Function function = (Stmt.Function) statement;
+            declarations.merge(function.name.lexeme, 1, Integer::sum);
+            reads = new HashSet<>();
+            pure = true;
+            walk(function.body);
+            if (pure)
+                candidates.put(function, reads);
+            reads = null;
+            return;
+        }
+        if (statement instanceof Stmt.Var)
+            declarations.merge(((Stmt.Var) statement).name.lexeme, 1, Integer::sum);
+        if (statement instanceof Stmt.Class)
+            declarations.merge(((Stmt.Class) statement).name.lexeme, 1, Integer::sum);
+        walk(statement);
+    }
+
+    private Map<Stmt.Function, Stmt.Function[]> pureFunctions() {
+        Map<String, Stmt.Function> byName = new HashMap<>();
+        candidates.forEach((function, reads) -> {
+            String name = function.name.lexeme;
+            if (declarations.get(name) == 1 && !assigned.contains(name))
+                byName.put(name, function);
+        });
+        // Drop every function that reads a global which does not qualify, until nothing changes.
+        boolean changed = true;
+        while (changed) {
+            changed = byName.values().removeIf(function -> !byName.keySet().containsAll(candidates.get(function)));
+        }
+        Map<Stmt.Function, Stmt.Function[]> pure = new HashMap<>();
+        for (Stmt.Function function : byName.values()) {
+            Set<Stmt.Function> reached = new LinkedHashSet<>();
+            reach(function, byName, reached);
+            pure.put(function, reached.toArray(new Stmt.Function[0]));
+        }
+        return pure;
+    }
+
+    private void reach(Stmt.Function function, Map<String, Stmt.Function> byName, Set<Stmt.Function> reached) {
+        if (!reached.add(function))
+            return;
+        for (String name : candidates.get(function)) {
+            reach(byName.get(name), byName, reached);
+        }
+    }
+
+    private void impure() {
+        pure = false;
+    }
+
+    private void walk(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            walk(statement);
+        }
+    }
+
+    private void walk(Stmt statement) {
+        statement.accept(this);
+    }
+
+    private void walk(Expr expression) {
+        expression.accept(this);
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        impure();
+        walk(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        walk(stmt.statements);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        impure();
+        for (Stmt.Function method : stmt.methods) {
+            walk(method.body);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        walk(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        impure();
+        walk(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null)
+            walk(stmt.initializer);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        walk(stmt.condition);
+        walk(stmt.thenBranch);
+        if (stmt.elseBranch != null)
+            walk(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        walk(stmt.condition);
+        walk(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value != null)
+            walk(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        walk(expr.left);
+        walk(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        walk(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        walk(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        if (reads != null && !locals.containsKey(expr))
+            reads.add(expr.name.lexeme);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        walk(expr.value);
+        if (!locals.containsKey(expr)) {
+            assigned.add(expr.name.lexeme);
+            impure();
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        walk(expr.left);
+        walk(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        // Only a global can be known to hold a pure function; a local could hold anything.
+        if (!(expr.callee instanceof Expr.Variable) || locals.containsKey(expr.callee))
+            impure();
+        walk(expr.callee);
+        for (Expr argument : expr.arguments) {
+            walk(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        impure();
+        walk(expr.object);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        impure();
+        walk(expr.value);
+        walk(expr.object);
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        impure();
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        impure();
+        return null;
+    }
+}
@@ -1,9 +1,10 @@
 package com.project.lox;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 
 import com.project.lox.Expr.Assign;
 import com.project.lox.Expr.Binary;
@@ -28,8 +29,26 @@ import com.project.lox.Stmt.Var;
 import com.project.lox.Stmt.While;
 
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
-    private final Interpreter interpreter;
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    private final ExecutionContext context;
+    private final Map<Expr, Integer> locals = new HashMap<>();
+    private final List<Function> functions = new ArrayList<>();
+    // Blocks and function bodies being resolved, innermost last. A closure captures every
+    // environment enclosing it, so the captured ones are always the first capturedFrames of these.
+    private final List<Stmt> frames = new ArrayList<>();
+    private int capturedFrames = 0;
+    // The local scopes being resolved as one stack of names, outermost first: scope i holds
+    // names[scopeStarts[i]] up to the start of scope i + 1, in the order they were declared.
+    // Lookups search from the innermost declaration outward, so the latest declaration of a name
+    // shadows earlier ones. Names are compared with equals, which the scanner's interning usually
+    // settles on identity alone.
+    private String[] names = new String[64];
+    private boolean[] defined = new boolean[64];
+    private int declared = 0;
+    private int[] scopeStarts = new int[16];
+    private int scopes = 0;
+    // Coverage counter slots handed out so far: one per statement and two per if and and/or, in
+    // the order they are resolved, so a script decoded again gets the same ones.
+    private int slots = 0;
 
     private enum FunctionType {
         NONE, FUNCTION, METHOD, INITIALIZER
@@ -42,12 +61,25 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     private FunctionType currentFunction = FunctionType.NONE;
     private ClassType currentClass = ClassType.NONE;
 
-    Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
+    Resolver(ExecutionContext context) {
+        this.context = context;
+    }
+
+    Map<Expr, Integer> locals() {
+        return locals;
+    }
+
+    List<Function> functions() {
+        return functions;
+    }
+
+    int slots() {
+        return slots;
     }
 
     @Override
     public Void visitFunctionStmt(Function stmt) {
+        capturedFrames = frames.size();
         declare(stmt.name);
         define(stmt.name);
         resolveFunction(stmt, FunctionType.FUNCTION);
@@ -55,14 +87,17 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
 
     private void resolveFunction(Function function, FunctionType type) {
+        functions.add(function);
         FunctionType enclosingFunction = currentFunction;
         currentFunction = type;
         beginScope();
+        frames.add(function);
         for (Token param : function.params) {
             declare(param);
             define(param);
         }
         resolve(function.body);
+        function.frameReusable = endFrame();
         endScope();
         currentFunction = enclosingFunction;
     }
@@ -70,17 +105,51 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitBlockStmt(Block stmt) {
         beginScope();
+        frames.add(stmt);
         resolve(stmt.statements);
+        stmt.frameReusable = endFrame();
         endScope();
         return null;
     }
 
+    // Closes the innermost frame, returning whether no closure can have captured it.
+    private boolean endFrame() {
+        frames.remove(frames.size() - 1);
+        if (capturedFrames > frames.size()) {
+            capturedFrames = frames.size();
+            return false;
+        }
+        return true;
+    }
+
     private void endScope() {
-        scopes.pop();
+        int end = declared;
+        declared = scopeStarts[--scopes];
+        Arrays.fill(names, declared, end, null);
     }
 
     private void beginScope() {
-        scopes.push(new HashMap<String, Boolean>());
+        if (scopes == scopeStarts.length)
+            scopeStarts = Arrays.copyOf(scopeStarts, scopes * 2);
+        scopeStarts[scopes++] = declared;
+    }
+
+    // The position in names of the innermost scope's own declaration of name, or -1.
+    private int findInInnermost(String name) {
+        for (int i = declared - 1; i >= scopeStarts[scopes - 1]; i--) {
+            if (names[i].equals(name))
+                return i;
+        }
+        return -1;
+    }
+
+    private void add(String name, boolean isDefined) {
+        if (declared == names.length) {
+            names = Arrays.copyOf(names, declared * 2);
+            defined = Arrays.copyOf(defined, declared * 2);
+        }
+        names[declared] = name;
+        defined[declared++] = isDefined;
     }
 
     void resolve(List<Stmt> statements) {
@@ -90,6 +159,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
 
     private void resolve(Stmt statement) {
+        statement.slot = slots++;
         statement.accept(this);
     }
 
@@ -120,23 +190,25 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
 
     private void declare(Token name) {
-        if (scopes.isEmpty())
+        if (scopes == 0)
+            return;
+        if (findInInnermost(name.lexeme) >= 0) {
+            context.error(name, "Variable with this name already exists");
             return;
-        Map<String, Boolean> scope = scopes.peek();
-        if (scope.containsKey(name.lexeme)) {
-            Lox.error(name, "Variable with this name already exists");
         }
-        scope.put(name.lexeme, false);
+        add(name.lexeme, false);
     }
 
     private void define(Token name) {
-        if (scopes.isEmpty())
+        if (scopes == 0)
             return;
-        scopes.peek().put(name.lexeme, true);
+        defined[findInInnermost(name.lexeme)] = true;
     }
 
     @Override
     public Void visitIfStmt(If stmt) {
+        stmt.branch = slots;
+        slots += 2;
         resolve(stmt.condition);
         resolve(stmt.thenBranch);
         if (stmt.elseBranch != null)
@@ -154,11 +226,11 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitReturnStmt(Return stmt) {
         if (currentFunction == FunctionType.NONE) {
-            Lox.error(stmt.keyword, "Cannot return from outside a function");
+            context.error(stmt.keyword, "Cannot return from outside a function");
         }
         if (stmt.value != null) {
             if (currentFunction == FunctionType.INITIALIZER) {
-                Lox.error(stmt.keyword, "Cannot return a value from the constructor");
+                context.error(stmt.keyword, "Cannot return a value from the constructor");
             }
             resolve(stmt.value);
         }
@@ -191,17 +263,24 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVariableExpr(Variable expr) {
-        if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
-            Lox.error(expr.name, "Cannot read local variable in it's own initializer");
+        if (scopes > 0) {
+            int declaration = findInInnermost(expr.name.lexeme);
+            if (declaration >= 0 && !defined[declaration])
+                context.error(expr.name, "Cannot read local variable in it's own initializer");
         }
         resolveLocal(expr, expr.name);
         return null;
     }
 
+    // Records how many scopes out the innermost declaration of name is; globals are left out.
     private void resolveLocal(Expr expr, Token name) {
-        for (int i = scopes.size() - 1; i >= 0; i--) {
-            if (scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expr, scopes.size() - 1 - i);
+        int scope = scopes - 1;
+        for (int i = declared - 1; i >= 0; i--) {
+            while (i < scopeStarts[scope])
+                scope--;
+            if (names[i].equals(name.lexeme)) {
+                locals.put(expr, scopes - 1 - scope);
+                return;
             }
         }
     }
@@ -215,6 +294,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitLogicalExpr(Logical expr) {
+        expr.branch = slots;
+        slots += 2;
         resolve(expr.left);
         resolve(expr.right);
         return null;
@@ -222,6 +303,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitCallExpr(Call expr) {
+        expr.site = new LoxCallSite(expr.paren, expr.arguments.size());
         resolve(expr.callee);
         for (Expr argument : expr.arguments) {
             resolve(argument);
@@ -231,22 +313,23 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitClassStmt(Class stmt) {
+        capturedFrames = frames.size();
         ClassType enclosing = currentClass;
         currentClass = ClassType.CLASS;
         declare(stmt.name);
         define(stmt.name);
 
         if (stmt.superclass != null && stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
-            Lox.error(stmt.superclass.name, "A class cannot inherit from itself");
+            context.error(stmt.superclass.name, "A class cannot inherit from itself");
         }
         if (stmt.superclass != null) {
             currentClass = ClassType.SUBCLASS;
             resolve(stmt.superclass);
             beginScope();
-            scopes.peek().put("super", true);
+            add("super", true);
         }
         beginScope();
-        scopes.peek().put("this", true);
+        add("this", true);
         for (Stmt.Function method : stmt.methods) {
             FunctionType declaration = FunctionType.METHOD;
             if (method.name.lexeme.equals("init")) {
@@ -276,8 +359,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitThisExpr(This expr) {
-        if (currentClass != ClassType.CLASS) {
-            Lox.error(expr.keyword, "Cannot use 'this' outside of a class");
+        if (currentClass == ClassType.NONE) {
+            context.error(expr.keyword, "Cannot use 'this' outside of a class");
         }
         resolveLocal(expr, expr.keyword);
         return null;
@@ -286,9 +369,9 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitSuperExpr(Super expr) {
         if (currentClass == ClassType.NONE) {
-            Lox.error(expr.keyword, "Cannot use 'super' outside of a class");
+            context.error(expr.keyword, "Cannot use 'super' outside of a class");
         } else if (currentClass != ClassType.SUBCLASS) {
-            Lox.error(expr.keyword, "Cannot use 'super' in a class with no superclass");
+            context.error(expr.keyword, "Cannot use 'super' in a class with no superclass");
         } else {
             resolveLocal(expr, expr.keyword);
         }
@@ -10,5 +10,6 @@ public class RuntimeError extends RuntimeException {
     RuntimeError(Token token, String message) {
         super(message);
         this.token = token;
+        LoxEvents.runtimeError(message, token.line);
     }
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import java.util.Map;
 
 public class Scanner {
     private final String source;
+    private final ExecutionContext context;
     private final List<Token> tokens = new ArrayList<>();
     private int start = 0;
     private int current = 0;
@@ -32,8 +33,9 @@ public class Scanner {
         keywords.put("while", TokenType.WHILE);
     }
 
-    Scanner(String source) {
+    Scanner(String source, ExecutionContext context) {
         this.source = source;
+        this.context = context;
     }
 
     List<Token> scanTokens() {
@@ -116,7 +118,7 @@ public class Scanner {
                 } else if (isAlpha(c)) {
                     handleIdentifier();
                 } else {
-                    Lox.error(line, "Cannot parse->'" + c + "'");
+                    context.error(line, "Cannot parse->'" + c + "'");
                 }
         }
     }
@@ -124,11 +126,12 @@ public class Scanner {
     private void handleIdentifier() {
         while (isAlphaNumeric(peek()))
             advance();
-        String text = source.substring(start, current);
+        // Interned so that every use of a name is the same string as its declaration.
+        String text = source.substring(start, current).intern();
         TokenType type = keywords.get(text);
         if (type == null)
             type = TokenType.IDENTIFIER;
-        addToken(type);
+        tokens.add(new Token(type, text, null, line));
     }
 
     private boolean isAlpha(char c) {
@@ -170,11 +173,13 @@ public class Scanner {
             advance();
         }
         if (isAtEnd()) {
-            Lox.error(line, "String unterminated");
+            context.error(line, "String unterminated");
             return;
         }
         advance();
-        String value = source.substring(start + 1, current - 1);
+        // Interned, so that every occurrence of a literal is the same string, and the same string
+        // as any runtime value equal to it that was interned too.
+        String value = source.substring(start + 1, current - 1).intern();
         addToken(TokenType.STRING, value);
     }
 
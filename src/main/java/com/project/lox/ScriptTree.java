@@ -0,0 +1,100 @@
+package com.project.lox;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The syntax tree of a {@link CompiledScript} with its resolution table and everything worked out
+ * from them. Nothing here is modified once the tree is built, so one tree can be run by any number of
+ * interpreters at once. Functions and running interpreters hold on to the tree they came from;
+ * once none do, the script may let it go and decode a new one when it next runs.
+ */
+final class ScriptTree {
+    final CompiledScript script;
+    final List<Stmt> statements;
+    final Map<Expr, Integer> locals;
+    // Every function and method declaration, in the order the resolver reached them, so that a
+    // declaration can be serialized as its position in the script.
+    final List<Stmt.Function> functions;
+    // Coverage counter slots the resolver gave out, see Coverage.
+    final int slots;
+    // Worked out on first use; threads that race to do it arrive at the same set.
+    // Each pure function and the functions it reaches through globals, see Purity.
+    private volatile Map<Stmt.Function, Stmt.Function[]> pureFunctions;
+    private volatile ClosureCompiler.Program program;
+    private volatile ClosureCompiler.Program instrumented;
+    private final Map<Stmt.Function, Jit.Compiled> compiled = new ConcurrentHashMap<>();
+
+    ScriptTree(CompiledScript script, List<Stmt> statements, Map<Expr, Integer> locals,
+            List<Stmt.Function> functions, int slots) {
+        this.script = script;
+        this.statements = Collections.unmodifiableList(statements);
+        this.locals = Collections.unmodifiableMap(locals);
+        this.functions = Collections.unmodifiableList(functions);
+        this.slots = slots;
+    }
+
+    boolean isPure(Stmt.Function function) {
+        return pureFunctions().containsKey(function);
+    }
+
+    /**
+     * Whether {@code function} is pure and every global it reaches in {@code globals} still holds
+     * the function this script declared there, so that its result depends on its arguments alone.
+     */
+    boolean isPureIn(Stmt.Function function, Memory globals) {
+        Stmt.Function[] reached = pureFunctions().get(function);
+        if (reached == null)
+            return false;
+        Map<String, Object> bindings = globals.bindings();
+        for (Stmt.Function callee : reached) {
+            Object value = bindings.get(callee.name.lexeme);
+            if (!(value instanceof LoxFunction) || !((LoxFunction) value).isDeclaredBy(callee))
+                return false;
+        }
+        return true;
+    }
+
+    private Map<Stmt.Function, Stmt.Function[]> pureFunctions() {
+        Map<Stmt.Function, Stmt.Function[]> pure = pureFunctions;
+        if (pure == null)
+            pureFunctions = pure = Purity.analyze(this);
+        return pure;
+    }
+
+    /** The script compiled to closures, see {@link ClosureCompiler}; compiled on first use. */
+    ClosureCompiler.Program program() {
+        ClosureCompiler.Program program = this.program;
+        if (program == null)
+            this.program = program = ClosureCompiler.compile(this);
+        return program;
+    }
+
+    /**
+     * The script compiled to closures that report to {@code instrumentation}. Only the program for
+     * the instrumentation asked for last is kept, which is all there is unless engines with
+     * different listeners share the script.
+     */
+    ClosureCompiler.Program instrumented(Instrumentation instrumentation) {
+        ClosureCompiler.Program program = this.instrumented;
+        if (program == null || program.instrumentation != instrumentation)
+            this.instrumented = program = ClosureCompiler.instrument(this, instrumentation);
+        return program;
+    }
+
+    /** Returns the pure top-level function called {@code name}, or null if there is none. */
+    Stmt.Function pureFunction(String name) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Function && ((Stmt.Function) statement).name.lexeme.equals(name))
+                return isPure((Stmt.Function) statement) ? (Stmt.Function) statement : null;
+        }
+        return null;
+    }
+
+    /** Compiles {@code function} the first time it is asked for and returns the same result after. */
+    Jit.Compiled compiled(Stmt.Function function) {
+        return compiled.computeIfAbsent(function, f -> Jit.compile(this, f));
+    }
+}
@@ -0,0 +1,50 @@
+package com.project.lox;
+
+import java.util.Arrays;
+
+/**
+ * The Lox-level call stack of one interpreter, kept only while profiling. The owning thread
+ * pushes and pops; the profiler's sampler reads it concurrently. Publishing {@code depth} through
+ * a volatile write makes every frame below it visible to the sampler without any locking on the
+ * call path.
+ */
+final class ShadowStack {
+    private Stmt.Function[] frames = new Stmt.Function[64];
+    private volatile int depth = 0;
+
+    void push(Stmt.Function function) {
+        int depth = this.depth;
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+        }
+        frames[depth] = function;
+        this.depth = depth + 1;
+    }
+
+    void pop() {
+        depth = depth - 1;
+    }
+
+    /**
+     * Renders the current stack in collapsed form, outermost frame first, or returns null when
+     * the interpreter is idle. A null frame stands for top-level script code.
+     */
+    String collapse() {
+        int depth = this.depth;
+        if (depth == 0)
+            return null;
+        Stmt.Function[] frames = this.frames;
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < depth && i < frames.length; i++) {
+            if (i > 0)
+                builder.append(';');
+            Stmt.Function frame = frames[i];
+            if (frame == null) {
+                builder.append("<script>");
+            } else {
+                builder.append(frame.name.lexeme).append(':').append(frame.name.line);
+            }
+        }
+        return builder.toString();
+    }
+}
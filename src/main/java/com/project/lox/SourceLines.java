@@ -0,0 +1,141 @@
+package com.project.lox;
+
+import java.util.List;
+
+/**
+ * Finds the source line a node starts on. Only some nodes keep a token, so this takes the first
+ * token found in source order and returns 0 when there is none, as for a bare literal or an
+ * empty block.
+ */
+final class SourceLines implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+    private static final SourceLines INSTANCE = new SourceLines();
+
+    private SourceLines() {
+    }
+
+    static int of(Stmt stmt) {
+        return stmt == null ? 0 : stmt.accept(INSTANCE);
+    }
+
+    static int of(Expr expr) {
+        return expr == null ? 0 : expr.accept(INSTANCE);
+    }
+
+    private static int first(int line, int fallback) {
+        return line != 0 ? line : fallback;
+    }
+
+    private static int firstOf(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            int line = of(statement);
+            if (line != 0)
+                return line;
+        }
+        return 0;
+    }
+
+    @Override
+    public Integer visitBinaryExpr(Expr.Binary expr) {
+        return first(of(expr.left), expr.operator.line);
+    }
+
+    @Override
+    public Integer visitGroupingExpr(Expr.Grouping expr) {
+        return of(expr.expression);
+    }
+
+    @Override
+    public Integer visitLiteralExpr(Expr.Literal expr) {
+        return 0;
+    }
+
+    @Override
+    public Integer visitUnaryExpr(Expr.Unary expr) {
+        return expr.operator.line;
+    }
+
+    @Override
+    public Integer visitVariableExpr(Expr.Variable expr) {
+        return expr.name.line;
+    }
+
+    @Override
+    public Integer visitAssignExpr(Expr.Assign expr) {
+        return expr.name.line;
+    }
+
+    @Override
+    public Integer visitLogicalExpr(Expr.Logical expr) {
+        return first(of(expr.left), expr.operator.line);
+    }
+
+    @Override
+    public Integer visitCallExpr(Expr.Call expr) {
+        return first(of(expr.callee), expr.paren.line);
+    }
+
+    @Override
+    public Integer visitGetExpr(Expr.Get expr) {
+        return first(of(expr.object), expr.name.line);
+    }
+
+    @Override
+    public Integer visitSetExpr(Expr.Set expr) {
+        return first(of(expr.object), expr.name.line);
+    }
+
+    @Override
+    public Integer visitThisExpr(Expr.This expr) {
+        return expr.keyword.line;
+    }
+
+    @Override
+    public Integer visitSuperExpr(Expr.Super expr) {
+        return expr.keyword.line;
+    }
+
+    @Override
+    public Integer visitFunctionStmt(Stmt.Function stmt) {
+        return stmt.name.line;
+    }
+
+    @Override
+    public Integer visitBlockStmt(Stmt.Block stmt) {
+        return firstOf(stmt.statements);
+    }
+
+    @Override
+    public Integer visitClassStmt(Stmt.Class stmt) {
+        return stmt.name.line;
+    }
+
+    @Override
+    public Integer visitExpressionStmt(Stmt.Expression stmt) {
+        return of(stmt.expression);
+    }
+
+    @Override
+    public Integer visitPrintStmt(Stmt.Print stmt) {
+        return of(stmt.expression);
+    }
+
+    @Override
+    public Integer visitVarStmt(Stmt.Var stmt) {
+        return stmt.name.line;
+    }
+
+    @Override
+    public Integer visitIfStmt(Stmt.If stmt) {
+        return first(of(stmt.condition), of(stmt.thenBranch));
+    }
+
+    @Override
+    public Integer visitWhileStmt(Stmt.While stmt) {
+        return first(of(stmt.condition), of(stmt.body));
+    }
+
+    @Override
+    public Integer visitReturnStmt(Stmt.Return stmt) {
+        return stmt.keyword.line;
+    }
+}
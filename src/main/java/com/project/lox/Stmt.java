@@ -4,6 +4,10 @@ import java.util.List;
 
 abstract class Stmt {
     abstract <R> R accept(Visitor<R> visitor);
+
+    // Filled in after parsing.
+    int slot;
+
     interface Visitor<R> {
         R visitFunctionStmt(Function stmt);
         R visitBlockStmt(Block stmt);
@@ -25,6 +29,8 @@ abstract class Stmt {
         final Token name;
         final List<Token> params;
         final List<Stmt> body;
+        // Filled in by the resolver.
+        boolean frameReusable;
 
         Function(Token name, List<Token> params, List<Stmt> body) {
             this.name = name;
@@ -41,6 +47,8 @@ abstract class Stmt {
     }
 
         final List<Stmt> statements;
+        // Filled in by the resolver.
+        boolean frameReusable;
 
         Block(List<Stmt> statements) {
             this.statements = statements;
@@ -119,6 +127,8 @@ abstract class Stmt {
         final Expr condition;
         final Stmt thenBranch;
         final Stmt elseBranch;
+        // Filled in by the resolver.
+        int branch;
 
         If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
             this.condition = condition;
@@ -0,0 +1,43 @@
+package com.project.lox;
+
+import java.io.PrintStream;
+import java.util.Set;
+
+/**
+ * The listener behind {@code --trace}: prints each statement, call, return and variable write of
+ * the traced functions, or of the whole script when no names are given, as it happens.
+ */
+final class Tracer implements ExecutionListener {
+    private final PrintStream out;
+    private final Set<String> functions;
+
+    Tracer(PrintStream out, Set<String> functions) {
+        this.out = out;
+        this.functions = functions;
+    }
+
+    @Override
+    public boolean observes(String name, int line) {
+        return functions.isEmpty() || functions.contains(name);
+    }
+
+    @Override
+    public void enterStatement(int line) {
+        out.println("[line " + line + "] statement");
+    }
+
+    @Override
+    public void enterCall(String name, int line) {
+        out.println("[line " + line + "] call " + name);
+    }
+
+    @Override
+    public void exitCall(String name, int line) {
+        out.println("[line " + line + "] return from " + name);
+    }
+
+    @Override
+    public void variableWritten(String name, Object value, int line) {
+        out.println("[line " + line + "] " + name + " = " + Interpreter.stringify(value));
+    }
+}
@@ -0,0 +1,318 @@
+package com.project.tool;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.project.lox.CaptureSink;
+import com.project.lox.CompiledScript;
+import com.project.lox.ExecutionResult;
+import com.project.lox.LoxEngine;
+
+/**
+ * Runs every .lox workload in a directory and reports how long each takes. A workload is compiled
+ * once, run a few times to warm up the JVM, then timed over a number of runs, counting the bytes
+ * the running thread allocated and the collections that happened meanwhile. Results can be saved
+ * as a JSON baseline and a later build compared against it. A workload whose output changes
+ * between runs or from the baseline counts as failed.
+ */
+public class Benchmark {
+    private static final String USAGE =
+            "Usage: benchmark [--warmup <runs>] [--runs <runs>] [--save <file>] [--compare <file>] <directory>";
+    // Changes smaller than this fraction of the baseline are reported as noise.
+    private static final double NOISE = 0.05;
+    private static final Pattern FIELD = Pattern.compile("\"(\\w+)\": (\"(?:[^\"\\\\]|\\\\.)*\"|[-+0-9.E]+)");
+
+    public static void main(String[] args) throws IOException {
+        int warmup = 5;
+        int runs = 10;
+        String save = null;
+        String compare = null;
+        String directory = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--warmup":
+                        warmup = Integer.parseInt(args[++i]);
+                        break;
+                    case "--runs":
+                        runs = Integer.parseInt(args[++i]);
+                        break;
+                    case "--save":
+                        save = args[++i];
+                        break;
+                    case "--compare":
+                        compare = args[++i];
+                        break;
+                    default:
+                        if (directory != null || args[i].startsWith("--"))
+                            throw new IllegalArgumentException(args[i]);
+                        directory = args[i];
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            directory = null;
+        }
+        if (directory == null || warmup < 0 || runs < 1) {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+
+        Map<String, Result> baseline = compare == null ? Collections.emptyMap() : readBaseline(Paths.get(compare));
+        LoxEngine engine = new LoxEngine(Runnable::run);
+        List<Result> results = new ArrayList<>();
+        double logRatios = 0;
+        int compared = 0;
+        int failures = 0;
+        System.out.printf("%-14s %12s %12s %12s %8s %11s", "workload", "median", "min", "alloc/run", "gc/run",
+                "gc ms/run");
+        System.out.println(baseline.isEmpty() ? "" : String.format("%12s %8s", "baseline", "change"));
+        for (Path file : workloads(Paths.get(directory))) {
+            String name = file.getFileName().toString().replaceFirst("\\.lox$", "");
+            Result result;
+            try {
+                String source = new String(Files.readAllBytes(file), Charset.defaultCharset());
+                result = measure(engine, name, source, warmup, runs);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                System.err.println(file + ": " + e.getMessage());
+                failures++;
+                continue;
+            }
+            results.add(result);
+            System.out.printf(Locale.ROOT, "%-14s %9.1f ms %9.1f ms %9.1f MB %8.1f %8.1f ms", name,
+                    result.medianMillis, result.minMillis, result.allocatedBytes / 1e6, result.collections,
+                    result.collectionMillis);
+            Result before = baseline.get(name);
+            if (before != null) {
+                double ratio = result.medianMillis / before.medianMillis;
+                logRatios += Math.log(ratio);
+                compared++;
+                System.out.printf(Locale.ROOT, "%9.1f ms %+7.1f%% %s", before.medianMillis, (ratio - 1) * 100,
+                        verdict(ratio));
+                if (!before.output.equals(result.output)) {
+                    System.out.print(" OUTPUT CHANGED");
+                    failures++;
+                }
+            } else if (!baseline.isEmpty()) {
+                System.out.printf("%12s", "new");
+            }
+            System.out.println();
+        }
+        if (compared > 0) {
+            double ratio = Math.exp(logRatios / compared);
+            System.out.printf(Locale.ROOT, "Geometric mean of %d workloads: %.3fx the baseline, %s%n", compared,
+                    ratio, verdict(ratio));
+        }
+        if (save != null)
+            writeBaseline(Paths.get(save), warmup, runs, results);
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    private static String verdict(double ratio) {
+        if (ratio < 1 - NOISE)
+            return "faster";
+        if (ratio > 1 + NOISE)
+            return "slower";
+        return "same";
+    }
+
+    private static List<Path> workloads(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.lox")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static Result measure(LoxEngine engine, String name, String source, int warmup, int runs) {
+        CompiledScript script = engine.compile(source, System.err);
+        String output = null;
+        for (int i = 0; i < warmup; i++) {
+            output = run(engine, script, output);
+        }
+        long[] times = new long[runs];
+        long allocated = 0;
+        long collections = 0;
+        long collectionMillis = 0;
+        for (int i = 0; i < runs; i++) {
+            long bytes = allocatedBytes();
+            long count = collections(false);
+            long millis = collections(true);
+            long start = System.nanoTime();
+            output = run(engine, script, output);
+            times[i] = System.nanoTime() - start;
+            allocated += allocatedBytes() - bytes;
+            collections += collections(false) - count;
+            collectionMillis += collections(true) - millis;
+        }
+        Arrays.sort(times);
+        return new Result(name, output, times[runs / 2] / 1e6, times[0] / 1e6, allocated / runs,
+                (double) collections / runs, (double) collectionMillis / runs);
+    }
+
+    private static String run(LoxEngine engine, CompiledScript script, String previous) {
+        CaptureSink sink = new CaptureSink();
+        ExecutionResult result = engine.execute(script, sink, System.err);
+        if (result != ExecutionResult.OK)
+            throw new IllegalStateException(result.toString());
+        String output = sink.toString();
+        if (previous != null && !previous.equals(output))
+            throw new IllegalStateException("Output differs between runs");
+        return output;
+    }
+
+    // Zero where the JVM cannot count allocations per thread.
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean))
+            return 0;
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long collections(boolean millis) {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, millis ? collector.getCollectionTime() : collector.getCollectionCount());
+        }
+        return total;
+    }
+
+    private static void writeBaseline(Path file, int warmup, int runs, List<Result> results) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, Charset.forName("UTF-8")))) {
+            out.println("{");
+            out.println("  \"java\": " + quote(System.getProperty("java.version")) + ",");
+            out.println("  \"warmup\": " + warmup + ",");
+            out.println("  \"runs\": " + runs + ",");
+            out.println("  \"workloads\": [");
+            for (int i = 0; i < results.size(); i++) {
+                Result result = results.get(i);
+                out.printf(Locale.ROOT, "    {\"name\": %s, \"median_ms\": %.3f, \"min_ms\": %.3f, "
+                        + "\"allocated_bytes\": %d, \"collections\": %.2f, \"collection_ms\": %.2f, \"output\": %s}%s%n",
+                        quote(result.name), result.medianMillis, result.minMillis, result.allocatedBytes,
+                        result.collections, result.collectionMillis, quote(result.output),
+                        i + 1 < results.size() ? "," : "");
+            }
+            out.println("  ]");
+            out.println("}");
+        }
+    }
+
+    // Reads a file written by writeBaseline, which puts each workload on a line of its own.
+    private static Map<String, Result> readBaseline(Path file) throws IOException {
+        Map<String, Result> baseline = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file, Charset.forName("UTF-8"))) {
+            Map<String, String> fields = new HashMap<>();
+            Matcher matcher = FIELD.matcher(line);
+            while (matcher.find()) {
+                fields.put(matcher.group(1), matcher.group(2));
+            }
+            if (!fields.containsKey("name") || !fields.containsKey("median_ms") || !fields.containsKey("output"))
+                continue;
+            String name = unquote(fields.get("name"));
+            baseline.put(name, new Result(name, unquote(fields.get("output")),
+                    Double.parseDouble(fields.get("median_ms")), Double.parseDouble(fields.get("min_ms")),
+                    Long.parseLong(fields.get("allocated_bytes")), Double.parseDouble(fields.get("collections")),
+                    Double.parseDouble(fields.get("collection_ms"))));
+        }
+        return baseline;
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                case '\\':
+                    quoted.append('\\').append(c);
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (c < ' ')
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    else
+                        quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static String unquote(String quoted) {
+        StringBuilder value = new StringBuilder();
+        for (int i = 1; i < quoted.length() - 1; i++) {
+            char c = quoted.charAt(i);
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            c = quoted.charAt(++i);
+            switch (c) {
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    value.append((char) Integer.parseInt(quoted.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                default:
+                    value.append(c);
+            }
+        }
+        return value.toString();
+    }
+
+    private static final class Result {
+        final String name;
+        final String output;
+        final double medianMillis;
+        final double minMillis;
+        final long allocatedBytes;
+        final double collections;
+        final double collectionMillis;
+
+        Result(String name, String output, double medianMillis, double minMillis, long allocatedBytes,
+                double collections, double collectionMillis) {
+            this.name = name;
+            this.output = output;
+            this.medianMillis = medianMillis;
+            this.minMillis = minMillis;
+            this.allocatedBytes = allocatedBytes;
+            this.collections = collections;
+            this.collectionMillis = collectionMillis;
+        }
+    }
+}
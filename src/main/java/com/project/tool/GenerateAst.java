@@ -16,23 +16,28 @@ public class GenerateAst {
         List<String> expressions = Arrays.asList("Binary: Expr left, Token operator, Expr right",
                 "Grouping: Expr expression", "Literal: Object value", "Unary: Token operator, Expr right",
                 "Variable: Token name", "Assign: Token name, Expr value",
-                "Logical: Expr left, Token operator, Expr right",
-                "Call: Expr callee, Token paren, List<Expr> arguments", "Get: Expr object, Token name",
+                "Logical: Expr left, Token operator, Expr right | int branch",
+                "Call: Expr callee, Token paren, List<Expr> arguments | LoxCallSite site",
+                "Get: Expr object, Token name",
                 "Set: Expr object, Token name, Expr value", "This: Token keyword",
                 "Super: Token keyword, Token method");
-        defineAst(outputDir, "Expr", expressions);
+        defineAst(outputDir, "Expr", expressions, null);
 
-        List<String> statements = Arrays.asList("Function: Token name, List<Token> params, List<Stmt> body",
-                "Block: List<Stmt> statements",
+        // Fields after a '|' are not set by the parser but filled in later by the resolver.
+        List<String> statements = Arrays.asList(
+                "Function: Token name, List<Token> params, List<Stmt> body | boolean frameReusable",
+                "Block: List<Stmt> statements | boolean frameReusable",
                 "Class: Token name, Expr.Variable superclass, List<Stmt.Function> methods",
                 "Expression: Expr expression", "Print: Expr expression", "Var: Token name, Expr initializer",
-                "If: Expr condition, Stmt thenBranch, Stmt elseBranch", "While: Expr condition, Stmt body",
+                "If: Expr condition, Stmt thenBranch, Stmt elseBranch | int branch", "While: Expr condition, Stmt body",
                 "Return: Token keyword, Expr value");
-        defineAst(outputDir, "Stmt", statements);
+        // Every statement has a coverage counter slot, see Coverage.
+        defineAst(outputDir, "Stmt", statements, "int slot");
 
     }
 
-    private static void defineAst(String outputDir, String baseName, List<String> types) throws IOException {
+    private static void defineAst(String outputDir, String baseName, List<String> types, String baseAnnotation)
+            throws IOException {
         String path = outputDir + "/" + baseName + ".java";
         PrintWriter writer = new PrintWriter(path, "UTF-8");
         writer.println("package com.project.lox;");
@@ -41,12 +46,19 @@ public class GenerateAst {
         writer.println();
         writer.println("abstract class " + baseName + " {");
         writer.println("    abstract <R> R accept(Visitor<R> visitor);");
+        if (baseAnnotation != null) {
+            writer.println();
+            writer.println("    // Filled in after parsing.");
+            writer.println("    " + baseAnnotation + ";");
+            writer.println();
+        }
         defineVisitor(writer, baseName, types);
         // The AST classes
         for (String type : types) {
             String className = type.split(":")[0].trim();
-            String fields = type.split(":")[1].trim();
-            defineType(writer, baseName, className, fields);
+            String[] fields = type.split(":")[1].split("\\|");
+            String annotations = fields.length > 1 ? fields[1].trim() : null;
+            defineType(writer, baseName, className, fields[0].trim(), annotations);
         }
         writer.println();
         writer.println("}");
@@ -63,7 +75,8 @@ public class GenerateAst {
         writer.println("    }");
     }
 
-    private static void defineType(PrintWriter writer, String baseName, String className, String fields) {
+    private static void defineType(PrintWriter writer, String baseName, String className, String fields,
+            String annotations) {
         writer.println("    static class " + className + " extends " + baseName + " {");
         String[] fieldList = fields.split(", ");
         // Visitor Pattern
@@ -78,6 +91,12 @@ public class GenerateAst {
         for (String field : fieldList) {
             writer.println("        final " + field + ";");
         }
+        if (annotations != null) {
+            writer.println("        // Filled in by the resolver.");
+            for (String annotation : annotations.split(", ")) {
+                writer.println("        " + annotation + ";");
+            }
+        }
         writer.println();
         // Constructor
         writer.println("        " + className + "(" + fields + ") {");
@@ -0,0 +1,41 @@
+package com.project.tool;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import com.project.lox.BufferedSink;
+import com.project.lox.ExecutionResult;
+import com.project.lox.LoxEngine;
+
+/**
+ * Runs every .lox file in a directory, discarding their output. Used as the training run when
+ * building a class-data sharing archive, so the archive holds the classes real scripts load.
+ */
+public class RunCorpus {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: run_corpus <directory>");
+            System.exit(1);
+        }
+        LoxEngine engine = new LoxEngine(Runnable::run);
+        int failures = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(args[0]), "*.lox")) {
+            for (Path file : files) {
+                String source = new String(Files.readAllBytes(file), Charset.defaultCharset());
+                ExecutionResult result = engine.execute(source, new BufferedSink(new StringWriter()), System.err);
+                if (result != ExecutionResult.OK) {
+                    System.err.println(file + ": " + result);
+                    failures++;
+                }
+            }
+        }
+        if (failures > 0)
+            System.exit(1);
+    }
+}
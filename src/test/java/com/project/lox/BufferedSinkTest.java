@@ -0,0 +1,39 @@
+package com.project.lox;
+
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BufferedSinkTest {
+    @Test
+    void holdsLinesUntilFlushed() {
+        StringWriter out = new StringWriter();
+        BufferedSink sink = new BufferedSink(out, 1024, 60_000);
+        sink.println("one");
+        sink.println("two");
+        assertEquals("", out.toString());
+        sink.flush();
+        assertEquals("one\ntwo\n", out.toString());
+    }
+
+    // A script that prints and then computes for a long time still shows what it printed.
+    @Test
+    void flushesAfterDelayWithoutAnotherLine() throws InterruptedException {
+        StringWriter out = new StringWriter();
+        BufferedSink sink = new BufferedSink(out, 1024, 20);
+        sink.println("hi");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (out.toString().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("hi\n", out.toString());
+        sink.println("again");
+        deadline = System.currentTimeMillis() + 5000;
+        while (out.toString().equals("hi\n") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("hi\nagain\n", out.toString());
+    }
+}
@@ -0,0 +1,208 @@
+package com.project.lox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Decodes scripts from their {@link FlatAst} and expects the same tree the parser built: the same
+ * nodes, tokens, lines, literal values, resolution and annotations, and the same functions in the
+ * same order.
+ */
+class FlatAstTest {
+    // Every kind of node, both ways of each optional part, and a line change inside most of them.
+    private static final String SOURCE = "var empty;\n"
+            + "var number = 1.5;\n"
+            + "var text = \"text\";\n"
+            + "var flags = !true == false or nil != nil and -number < 2;\n"
+            + "class Shape {\n"
+            + "  init(side) { this.side = side; }\n"
+            + "  area() { return this.side *\n"
+            + "      this.side; }\n"
+            + "  nothing() { return; }\n"
+            + "}\n"
+            + "class Square < Shape {\n"
+            + "  area() { return super.area() + (0 - 0); }\n"
+            + "}\n"
+            + "fun count(limit) {\n"
+            + "  var total = 0;\n"
+            + "  for (var i = 0; i < limit; i = i + 1) {\n"
+            + "    if (i / 2 > 1) total = total + i; else {\n"
+            + "      total = total - 1;\n"
+            + "    }\n"
+            + "    if (i >= limit) print \"never\";\n"
+            + "  }\n"
+            + "  while (total <= 0) total = total + 1;\n"
+            + "  fun inner() { return total; }\n"
+            + "  return inner;\n"
+            + "}\n"
+            + "{\n"
+            + "  var square = Square(3);\n"
+            + "  print square.area();\n"
+            + "  print count(5)() + number;\n"
+            + "  print text;\n"
+            + "}\n";
+
+    @Test
+    void decodedTreeMatchesParsedTree() {
+        CompiledScript script = compile(SOURCE);
+        ScriptTree parsed = script.tree();
+        String expected = dump(parsed);
+
+        clear(script);
+        ScriptTree decoded = script.tree();
+        assertNotSame(parsed, decoded);
+        assertEquals(expected, dump(decoded));
+        assertEquals(functions(parsed), functions(decoded));
+        assertEquals(parsed.slots, decoded.slots);
+    }
+
+    @Test
+    void deserializedScriptDecodesTheSameTree() throws IOException, ClassNotFoundException {
+        CompiledScript script = compile(SOURCE);
+        ScriptTree parsed = script.tree();
+
+        ScriptTree decoded = copy(script).tree();
+        assertEquals(dump(parsed), dump(decoded));
+        assertEquals(functions(parsed), functions(decoded));
+    }
+
+    @Test
+    void linesAndConstants() {
+        CompiledScript script = compile(SOURCE);
+        clear(script);
+        List<Stmt> statements = script.tree().statements;
+
+        Stmt.Var number = (Stmt.Var) statements.get(1);
+        assertEquals(2, number.name.line);
+        assertEquals(1.5, ((Expr.Literal) number.initializer).value);
+        Stmt.Var text = (Stmt.Var) statements.get(2);
+        assertSame("text", ((Expr.Literal) text.initializer).value);
+        assertSame("text", text.name.lexeme);
+
+        Stmt.Class square = (Stmt.Class) statements.get(5);
+        assertEquals(11, square.name.line);
+        assertEquals("Shape", square.superclass.name.lexeme);
+        Stmt.Return area = (Stmt.Return) ((Stmt.Class) statements.get(4)).methods.get(1).body.get(0);
+        Expr.Binary product = (Expr.Binary) area.value;
+        assertEquals(7, product.operator.line);
+        assertEquals(8, ((Expr.Get) product.right).name.line);
+    }
+
+    // A decoded script must run as the parsed one did, on both engines.
+    @Test
+    void decodedTreeRuns() {
+        String expected = "9\n";
+        for (boolean closures : new boolean[] {false, true}) {
+            CompiledScript script = compile("class A { init(n) { this.n = n; } get() { return this.n; } }\n"
+                    + "class B < A { get() { return super.get() * this.n; } }\n"
+                    + "print B(3).get();\n");
+            clear(script);
+            Interpreter interpreter = Scripts.interpreter(closures);
+            interpreter.interpret(script);
+            assertEquals(ExecutionResult.OK, LoxEngine.resultOf(interpreter.context));
+            assertEquals(expected, interpreter.context.out.toString());
+        }
+    }
+
+    @Test
+    void runningScriptKeepsItsTree() {
+        CompiledScript script = compile(SOURCE);
+        ScriptTree tree = script.enter();
+        assertFalse(script.release());
+        assertSame(tree, script.tree());
+        script.exit();
+        assertTrue(script.release());
+        assertNotSame(tree, script.tree());
+    }
+
+    private static CompiledScript compile(String source) {
+        CompiledScript script = LoxEngine.compile(source, new ExecutionContext(new CaptureSink(), System.err));
+        assertNotNull(script, "compile error");
+        return script;
+    }
+
+    // What happens to a script once it has been idle for a while.
+    private static void clear(CompiledScript script) {
+        assertTrue(script.release());
+    }
+
+    private static CompiledScript copy(CompiledScript script) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(script);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (CompiledScript) in.readObject();
+        }
+    }
+
+    private static List<String> functions(ScriptTree tree) {
+        List<String> functions = new ArrayList<>();
+        for (Stmt.Function function : tree.functions) {
+            functions.add(function.name.lexeme + ":" + function.name.line + "/" + function.params.size());
+        }
+        return functions;
+    }
+
+    private static String dump(ScriptTree tree) {
+        StringBuilder out = new StringBuilder();
+        for (Stmt statement : tree.statements) {
+            dump(tree, statement, out);
+        }
+        return out.toString();
+    }
+
+    // Writes a node's class and every field, following nodes, lists and tokens; call sites are
+    // filled in at run time and left out.
+    private static void dump(ScriptTree tree, Object value, StringBuilder out) {
+        if (value == null) {
+            out.append("null ");
+        } else if (value instanceof Token) {
+            Token token = (Token) value;
+            out.append(token.type).append('\'').append(token.lexeme).append("'@").append(token.line).append(' ');
+        } else if (value instanceof List) {
+            out.append('[');
+            for (Object element : (List<?>) value) {
+                dump(tree, element, out);
+            }
+            out.append("] ");
+        } else if (value instanceof Expr || value instanceof Stmt) {
+            out.append('(').append(value.getClass().getSimpleName());
+            if (value instanceof Expr)
+                out.append(" local=").append(tree.locals.get(value));
+            out.append(' ');
+            for (Class<?> type = value.getClass(); type != Object.class; type = type.getSuperclass()) {
+                for (Field field : type.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.getType() == LoxCallSite.class)
+                        continue;
+                    field.setAccessible(true);
+                    out.append(field.getName()).append('=');
+                    try {
+                        dump(tree, field.get(value), out);
+                    } catch (IllegalAccessException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            }
+            out.append(") ");
+        } else {
+            out.append(value.getClass().getSimpleName()).append(':').append(value).append(' ');
+        }
+    }
+}
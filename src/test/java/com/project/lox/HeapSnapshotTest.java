@@ -0,0 +1,133 @@
+package com.project.lox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeapSnapshotTest {
+    private static final String PRELUDE = "class Shape {\n"
+            + "  init(name) { this.name = name; }\n"
+            + "  describe() { return \"shape \" + this.name; }\n"
+            + "}\n"
+            + "class Square < Shape {\n"
+            + "  init(side) { super.init(\"square\"); this.side = side; }\n"
+            + "  area() { return this.side * this.side; }\n"
+            + "  describe() { return super.describe() + \"!\"; }\n"
+            + "}\n"
+            + "fun counter() {\n"
+            + "  var n = 0;\n"
+            + "  fun next() { n = n + 1; return n; }\n"
+            + "  return next;\n"
+            + "}\n"
+            + "var next = counter();\n"
+            + "next();\n"
+            + "next();\n"
+            + "var increment;\n"
+            + "var current;\n"
+            + "{\n"
+            + "  var shared = 10;\n"
+            + "  fun inc() { shared = shared + 1; }\n"
+            + "  fun get() { return shared; }\n"
+            + "  increment = inc;\n"
+            + "  current = get;\n"
+            + "}\n"
+            + "var square = Square(3);\n"
+            + "var reinit = square.init;\n"
+            + "var greeting = \"hello\";\n";
+
+    private static final String MAIN = "print next();\n"
+            + "increment();\n"
+            + "print current();\n"
+            + "print square.describe();\n"
+            + "print square.area();\n"
+            + "print Square(2).area();\n"
+            + "reinit(5);\n"
+            + "print square.area();\n"
+            + "print greeting + \" world\";\n";
+
+    private static final String EXPECTED = "3\n11\nshape square!\n9\n4\n25\nhello world\n";
+
+    private static HeapSnapshot capture(boolean closures) throws IOException {
+        Interpreter prelude = Scripts.interpreter(closures);
+        Scripts.run(prelude, PRELUDE);
+        HeapSnapshot snapshot = HeapSnapshot.capture(prelude.globals);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        snapshot.write(bytes);
+        return HeapSnapshot.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static Interpreter restore(HeapSnapshot snapshot, boolean closures) throws IOException {
+        Interpreter interpreter = Scripts.interpreter(closures);
+        snapshot.restore(interpreter.globals);
+        return interpreter;
+    }
+
+    @Test
+    void restoredGlobalsBehaveLikeThePreludeRan() throws IOException {
+        assertEquals(EXPECTED, Scripts.run(PRELUDE + MAIN, false));
+        for (boolean captureClosures : new boolean[] {false, true}) {
+            HeapSnapshot snapshot = capture(captureClosures);
+            for (boolean runClosures : new boolean[] {false, true}) {
+                assertEquals(EXPECTED, Scripts.run(restore(snapshot, runClosures), MAIN),
+                        "captured with closures=" + captureClosures + ", run with closures=" + runClosures);
+            }
+        }
+    }
+
+    @Test
+    void restoresAreIndependent() throws IOException {
+        HeapSnapshot snapshot = capture(false);
+        Interpreter first = restore(snapshot, false);
+        Interpreter second = restore(snapshot, false);
+        assertEquals("3\n4\n", Scripts.run(first, "print next(); print next();"));
+        assertEquals("3\n", Scripts.run(second, "print next();"));
+        assertNotSame(first.globals.bindings().get("square"), second.globals.bindings().get("square"));
+    }
+
+    @Test
+    void stringsStayInterned() throws IOException {
+        Interpreter interpreter = restore(capture(false), false);
+        assertSame("hello", interpreter.globals.bindings().get("greeting"));
+        LoxInstance square = (LoxInstance) interpreter.globals.bindings().get("square");
+        assertSame("square", square.get(new Token(TokenType.IDENTIFIER, "name", null, 1)));
+    }
+
+    @Test
+    void mapsAndListsRestore() throws IOException {
+        Interpreter prelude = Scripts.interpreter(false);
+        Scripts.run(prelude, "var m = Map(); m.set(\"k\", true); m.set(1, nil);\n"
+                + "var l = List(); l.add(m); l.add(false); l.add(clock); l.add(2.5);\n");
+        Interpreter interpreter = Scripts.interpreter(false);
+        HeapSnapshot.capture(prelude.globals).restore(interpreter.globals);
+        assertEquals("true\nnil\nfalse\n2.5\n4\n", Scripts.run(interpreter,
+                "print l.get(0).get(\"k\"); print m.get(1); print l.get(1); print l.get(3); print l.size();"));
+    }
+
+    // Serializable JDK classes a snapshot never contains are refused, even ones from java.util.
+    @Test
+    void foreignClassesAreRefused() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new HashMap<>(Collections.singletonMap("dates", new LinkedList<>(
+                    Collections.singletonList(new Date())))));
+        }
+        HeapSnapshot snapshot = HeapSnapshot.read(new ByteArrayInputStream(bytes.toByteArray()));
+        InvalidClassException error = assertThrows(InvalidClassException.class,
+                () -> snapshot.restore(Scripts.interpreter(false).globals));
+        assertTrue(error.getMessage().contains("java.util.LinkedList"), error.getMessage());
+    }
+}
@@ -0,0 +1,99 @@
+package com.project.lox;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs scripts with a listener or coverage attached on both engines and checks what they see.
+ */
+class InstrumentationTest {
+    private static final String FIB = "fun fib(n) {\n"
+            + "  if (n < 2) return n;\n"
+            + "  return fib(n - 1) + fib(n - 2);\n"
+            + "}\n"
+            + "print fib(10);\n"
+            + "print fib(10);\n";
+    // Calls fib(10) makes, itself included.
+    private static final int FIB_CALLS = 177;
+
+    private static class Calls implements ExecutionListener {
+        final List<String> calls = new ArrayList<>();
+        final List<Integer> statements = new ArrayList<>();
+
+        @Override
+        public void enterCall(String name, int line) {
+            calls.add(name);
+        }
+
+        @Override
+        public void enterStatement(int line) {
+            statements.add(line);
+        }
+    }
+
+    private static Interpreter interpreter(boolean closures, ExecutionListener listener, Coverage coverage) {
+        Interpreter interpreter = Scripts.interpreter(closures);
+        interpreter.context.instrumentation = Instrumentation.of(listener, coverage);
+        return interpreter;
+    }
+
+    @Test
+    void listenerSeesMemoizedCalls() {
+        for (boolean closures : new boolean[] {false, true}) {
+            Calls listener = new Calls();
+            Interpreter interpreter = interpreter(closures, listener, null);
+            interpreter.context.memoizer = new Memoizer(100);
+            assertEquals("55\n55\n", Scripts.run(interpreter, FIB));
+            assertEquals(2 * FIB_CALLS, listener.calls.size());
+        }
+    }
+
+    @Test
+    void coverageCountsMemoizedCalls() throws IOException {
+        for (boolean closures : new boolean[] {false, true}) {
+            Coverage coverage = new Coverage();
+            Interpreter interpreter = interpreter(closures, null, coverage);
+            interpreter.context.memoizer = new Memoizer(100);
+            CompiledScript script = LoxEngine.compile(FIB, interpreter.context);
+            interpreter.interpret(script);
+            StringWriter lcov = new StringWriter();
+            coverage.write(script, "fib.lox", lcov);
+            assertTrue(lcov.toString().contains("DA:2," + 2 * FIB_CALLS + "\n"), lcov.toString());
+        }
+    }
+
+    // Coverage runs every function instrumented, but the listener hears only about the ones it
+    // observes.
+    @Test
+    void coverageDoesNotWidenListener() throws IOException {
+        String source = "fun f(x) { return x + 1; }\n"
+                + "fun g(x) { return f(x) * 2; }\n"
+                + "print g(1);\n";
+        for (boolean closures : new boolean[] {false, true}) {
+            Calls listener = new Calls() {
+                @Override
+                public boolean observes(String name, int line) {
+                    return "f".equals(name);
+                }
+            };
+            Coverage coverage = new Coverage();
+            Interpreter interpreter = interpreter(closures, listener, coverage);
+            CompiledScript script = LoxEngine.compile(source, interpreter.context);
+            interpreter.interpret(script);
+            assertEquals("4\n", interpreter.context.out.toString());
+            assertEquals(Collections.singletonList("f"), listener.calls);
+            assertEquals(Collections.singletonList(1), listener.statements);
+            StringWriter lcov = new StringWriter();
+            coverage.write(script, "fg.lox", lcov);
+            assertTrue(lcov.toString().contains("DA:1,1\nDA:2,1\nDA:3,1\n"), lcov.toString());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.project.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs each script with every pure numeric function compiled on its first call and again with the
+ * JIT off, and expects the same output, errors and result from both. The call that triggers
+ * compilation still runs in the interpreter, so the interesting values come after a first call.
+ */
+class JitTest {
+    private static final class Run {
+        final String out;
+        final String err;
+        final ExecutionResult result;
+        final Interpreter interpreter;
+
+        Run(boolean jit, String... sources) {
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            ExecutionContext context = new ExecutionContext(new CaptureSink(), new PrintStream(err, true));
+            context.jit = jit;
+            context.jitThreshold = 1;
+            interpreter = new Interpreter(context);
+            for (String source : sources) {
+                LoxEngine.run(interpreter, source);
+            }
+            this.out = context.out.toString();
+            this.err = err.toString();
+            this.result = LoxEngine.resultOf(context);
+        }
+
+        boolean compiled(String function) {
+            return ((LoxFunction) interpreter.globals.bindings().get(function)).isCompiled();
+        }
+    }
+
+    // Runs the scripts one after another in one interpreter, both ways, and returns the compiled
+    // run once it has matched the interpreted one.
+    private static Run compare(String... sources) {
+        Run interpreted = new Run(false, sources);
+        Run compiled = new Run(true, sources);
+        assertEquals(interpreted.out, compiled.out);
+        assertEquals(interpreted.err, compiled.err);
+        assertEquals(interpreted.result, compiled.result);
+        return compiled;
+    }
+
+    @Test
+    void notANumber() {
+        Run run = compare("fun nan(x) { return (x - x) / (x - x); }\n"
+                + "fun same(x) { var n = nan(x); if (n == n) return 1; return 0; }\n"
+                + "fun differs(x) { var n = nan(x); if (n != n) return 1; return 0; }\n"
+                + "fun less(x) { if (nan(x) < x) return 1; if (nan(x) >= x) return 2; return 3; }\n"
+                + "for (var i = 0; i < 3; i = i + 1) {\n"
+                + "  print nan(i); print same(i); print differs(i); print less(i);\n"
+                + "}\n");
+        assertTrue(run.compiled("same"));
+        assertTrue(run.compiled("less"));
+    }
+
+    @Test
+    void negativeZero() {
+        Run run = compare("fun negate(x) { return -x; }\n"
+                + "fun same(x) { if (negate(x) == x) return 1; return 0; }\n"
+                + "fun scale(x) { return x * -1 / 4; }\n"
+                + "for (var i = 2; i >= -1; i = i - 1) {\n"
+                + "  print negate(i); print same(i); print scale(i); print 1 / negate(i);\n"
+                + "}\n");
+        assertTrue(run.compiled("same"));
+        assertTrue(run.compiled("scale"));
+    }
+
+    @Test
+    void equality() {
+        Run run = compare("fun eq(a, b) { if (a == b) return 1; if (a != b) return 2; return 3; }\n"
+                + "print eq(5, 6); print eq(1, 1); print eq(1, 2); print eq(0.1 + 0.2, 0.3); print eq(3, 3.0);\n");
+        assertTrue(run.compiled("eq"));
+    }
+
+    @Test
+    void truthiness() {
+        Run run = compare("fun truthy(x) { if (x) return 1; return 2; }\n"
+                + "fun not(x) { if (!x) return 1; return 2; }\n"
+                + "fun both(x, y) { if (x < 1 and y > 1) return 1; if (x < 1 or y > 1) return 2; return 3; }\n"
+                + "print truthy(1); print truthy(0); print truthy(-1); print not(1); print not(0);\n"
+                + "print both(5, 5); print both(0, 2); print both(0, 0); print both(5, 0);\n");
+        assertTrue(run.compiled("truthy"));
+        assertTrue(run.compiled("not"));
+        assertTrue(run.compiled("both"));
+    }
+
+    // A function declared twice in one script is not pure, so only a later script, as at the
+    // prompt, can change a callee under compiled code.
+    @Test
+    void redefinedCallee() {
+        Run run = compare("fun step(x) { return x + 1; }\n"
+                + "fun twice(x) { return step(step(x)); }\n"
+                + "for (var i = 0; i < 5; i = i + 1) print twice(i);\n",
+                "fun step(x) { return x * 10; }\n"
+                + "for (var i = 0; i < 5; i = i + 1) print twice(i);\n",
+                "var step = \"not a function\";\n"
+                + "print twice(1);\n");
+        assertTrue(run.compiled("twice"));
+        assertEquals(ExecutionResult.RUNTIME_ERROR, run.result);
+    }
+
+    @Test
+    void nonNumberArgument() {
+        Run run = compare("fun square(x) { return x * x; }\n"
+                + "fun identity(x) { return x; }\n"
+                + "for (var i = 0; i < 5; i = i + 1) { print square(i); print identity(i); }\n"
+                + "print identity(\"text\");\n"
+                + "print identity(nil);\n"
+                + "print identity(true);\n"
+                + "print square(\"text\");\n");
+        assertTrue(run.compiled("square"));
+        assertEquals(ExecutionResult.RUNTIME_ERROR, run.result);
+    }
+}
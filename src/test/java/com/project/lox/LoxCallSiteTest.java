@@ -0,0 +1,67 @@
+package com.project.lox;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class LoxCallSiteTest {
+    private static CompiledScript compile(String source) {
+        return LoxEngine.compile(source, new ExecutionContext(new CaptureSink(), System.err));
+    }
+
+    // The site of the call returned by the first statement of the script's first function.
+    private static LoxCallSite site(CompiledScript script) {
+        Stmt.Function function = (Stmt.Function) script.tree().statements.get(0);
+        return ((Expr.Call) ((Stmt.Return) function.body.get(0)).value).site;
+    }
+
+    @Test
+    void methodsOfManyCollectionsShareOneEntry() {
+        for (boolean closures : new boolean[] {false, true}) {
+            CompiledScript script = compile("fun probe(c, k) { return c.get(k); }\n"
+                    + "var total = 0;\n"
+                    + "for (var i = 0; i < 10; i = i + 1) {\n"
+                    + "  var m = Map(); m.set(\"k\", i); total = total + probe(m, \"k\");\n"
+                    + "  var l = List(); l.add(i); total = total + probe(l, 0);\n"
+                    + "}\n"
+                    + "print total;\n");
+            Interpreter interpreter = Scripts.interpreter(closures);
+            interpreter.interpret(script);
+            assertEquals("90\n", interpreter.context.out.toString());
+            assertFalse(site(script).isMegamorphic());
+        }
+    }
+
+    // Each execution creates its own classes; the site keeps to the one initializer they share.
+    @Test
+    void classesOfRepeatedExecutionsShareOneEntry() {
+        CompiledScript script = compile("fun make() { return Point(1, 2); }\n"
+                + "class Point { init(x, y) { this.x = x; this.y = y; } }\n"
+                + "print make().y;\n");
+        for (int i = 0; i < 10; i++) {
+            Interpreter interpreter = Scripts.interpreter(i % 2 == 0);
+            interpreter.interpret(script);
+            assertEquals("2\n", interpreter.context.out.toString());
+        }
+        assertFalse(site(script).isMegamorphic());
+    }
+
+    // One class declaration, two superclasses: the arity comes from whichever initializer it gets.
+    @Test
+    void inheritedInitializerArityIsChecked() {
+        String source = "fun build(C) { return C(); }\n"
+                + "class None {}\n"
+                + "class Two { init(a, b) {} }\n"
+                + "fun subclass(S) { class C < S {} return C; }\n"
+                + "build(subclass(None));\n"
+                + "print \"built\";\n"
+                + "build(subclass(Two));\n";
+        for (boolean closures : new boolean[] {false, true}) {
+            Interpreter interpreter = Scripts.interpreter(closures);
+            LoxEngine.run(interpreter, source);
+            assertEquals(ExecutionResult.RUNTIME_ERROR, LoxEngine.resultOf(interpreter.context));
+            assertEquals("built\n[line 1] Expected 2 arguments, but got 0\n", interpreter.context.out.toString());
+        }
+    }
+}
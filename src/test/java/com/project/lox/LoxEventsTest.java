@@ -0,0 +1,85 @@
+package com.project.lox;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Records scripts with Flight Recorder and reads back the events they produced.
+ */
+class LoxEventsTest {
+    @Test
+    void scriptExecutionRecordsAllocations() throws IOException {
+        List<RecordedEvent> events = record("com.project.lox.ScriptExecution",
+                "var list = List();\n"
+                + "for (var i = 0; i < 10000; i = i + 1) list.add(\"item\" + \"s\");\n"
+                + "print list.size();\n");
+        assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        assertFalse(event.getBoolean("failed"));
+        assertTrue(event.getLong("allocated") > 10000, event.toString());
+        assertTrue(event.getLong("collections") >= 0);
+    }
+
+    @Test
+    void runtimeErrorRecordsLine() throws IOException {
+        List<RecordedEvent> events = record("com.project.lox.RuntimeError", "print 1;\nprint 1 + nil;\n");
+        assertEquals(1, events.size());
+        assertEquals(2, events.get(0).getInt("line"));
+    }
+
+    // Compiled code emits no events, so while calls are recorded every call runs interpreted; once
+    // the recording stops the JIT takes over again.
+    @Test
+    void jitWaitsForCallRecordingToStop() throws IOException {
+        ExecutionContext context = new ExecutionContext(new CaptureSink(), System.err);
+        context.jitThreshold = 1;
+        Interpreter interpreter = new Interpreter(context);
+        String source = "fun square(x) { return x * x; }\n"
+                + "for (var i = 0; i < 10; i = i + 1) square(i);\n";
+        List<RecordedEvent> events = record("com.project.lox.FunctionCall", () -> Scripts.run(interpreter, source));
+        assertEquals(10, events.size());
+        assertFalse(((LoxFunction) interpreter.globals.bindings().get("square")).isCompiled());
+
+        Scripts.run(interpreter, source);
+        assertTrue(((LoxFunction) interpreter.globals.bindings().get("square")).isCompiled());
+    }
+
+    private static List<RecordedEvent> record(String name, String source) throws IOException {
+        return record(name, () -> Scripts.result(source, false));
+    }
+
+    private static List<RecordedEvent> record(String name, Runnable run) throws IOException {
+        Path file = Files.createTempFile("lox", ".jfr");
+        try {
+            try (Recording recording = new Recording()) {
+                recording.enable(name).withThreshold(Duration.ZERO);
+                recording.start();
+                run.run();
+                recording.stop();
+                recording.dump(file);
+            }
+            List<RecordedEvent> events = new ArrayList<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (event.getEventType().getName().equals(name))
+                    events.add(event);
+            }
+            return events;
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
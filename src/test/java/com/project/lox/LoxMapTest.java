@@ -0,0 +1,118 @@
+package com.project.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoxMapTest {
+    // A fresh map has 16 slots, so this many keys fit without a resize.
+    private static final int SLOTS = 16;
+
+    // Numbers whose home slot in a fresh map is home.
+    private static List<Object> keysAt(int home, int count) {
+        List<Object> keys = new ArrayList<>();
+        for (double key = 0; keys.size() < count; key++) {
+            if ((LoxMap.hash(key) & (SLOTS - 1)) == home)
+                keys.add(key);
+        }
+        return keys;
+    }
+
+    @Test
+    void removeShiftsWrappedClusterBack() {
+        // Three keys that all want the last slot fill it and wrap around into slots 0 and 1, and
+        // a key at home in slot 0 is pushed to slot 2 behind them.
+        List<Object> wrapped = keysAt(SLOTS - 1, 3);
+        Object displaced = keysAt(0, 1).get(0);
+        LoxMap map = new LoxMap();
+        for (Object key : wrapped) {
+            map.put(key, "wrapped " + key);
+        }
+        map.put(displaced, "displaced");
+
+        assertEquals("wrapped " + wrapped.get(0), map.remove(wrapped.get(0)));
+        assertNull(map.get(wrapped.get(0)));
+        assertFalse(map.containsKey(wrapped.get(0)));
+        assertEquals("wrapped " + wrapped.get(1), map.get(wrapped.get(1)));
+        assertEquals("wrapped " + wrapped.get(2), map.get(wrapped.get(2)));
+        assertEquals("displaced", map.get(displaced));
+        assertEquals(3, map.size());
+
+        assertEquals("wrapped " + wrapped.get(2), map.remove(wrapped.get(2)));
+        assertEquals("wrapped " + wrapped.get(1), map.get(wrapped.get(1)));
+        assertEquals("displaced", map.get(displaced));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void removeLeavesEntriesAtHomeInPlace() {
+        // The second key is at home, so removing the first must not pull it back over the first's
+        // slot, where a lookup would no longer reach it.
+        Object first = keysAt(3, 1).get(0);
+        Object second = keysAt(4, 1).get(0);
+        LoxMap map = new LoxMap();
+        map.put(first, 1.0);
+        map.put(second, 2.0);
+        map.remove(first);
+        assertEquals(2.0, map.get(second));
+        map.put(first, 3.0);
+        assertEquals(3.0, map.get(first));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void removeThenLookupMissingKey() {
+        List<Object> keys = keysAt(7, 4);
+        LoxMap map = new LoxMap();
+        for (Object key : keys) {
+            map.put(key, key);
+        }
+        for (Object key : keys) {
+            assertSame(key, map.remove(key));
+            assertNull(map.remove(key));
+            assertFalse(map.containsKey(key));
+        }
+        assertEquals(0, map.size());
+        map.put(keys.get(3), "back");
+        assertEquals("back", map.get(keys.get(3)));
+    }
+
+    @Test
+    void matchesHashMapUnderRandomPutsAndRemoves() {
+        Random random = new Random(42);
+        LoxMap map = new LoxMap();
+        Map<Object, Object> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            Double key = (double) random.nextInt(64);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                map.put(key, (double) i);
+                expected.put(key, (double) i);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (int key = 0; key < 64; key++) {
+            assertEquals(expected.get((double) key), map.get((double) key));
+            assertEquals(expected.containsKey((double) key), map.containsKey((double) key));
+        }
+    }
+
+    @Test
+    void methodsAreBoundOnce() {
+        LoxMap map = new LoxMap();
+        Token get = new Token(TokenType.IDENTIFIER, "get", null, 1);
+        assertSame(map.get(get), map.get(get));
+        assertTrue(map.get(get) instanceof NativeFunction);
+    }
+}
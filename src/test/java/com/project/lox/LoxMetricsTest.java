@@ -0,0 +1,34 @@
+package com.project.lox;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Records into a metrics object of its own, leaving the process-wide one off so that other tests
+ * still run with the JIT.
+ */
+class LoxMetricsTest {
+    // As at the prompt, a later script declares a class with the same name as an earlier one.
+    @Test
+    void classesWithTheSameNameCountApart() {
+        Interpreter interpreter = Scripts.interpreter(false);
+        Scripts.run(interpreter, "class Point {}");
+        LoxClass first = (LoxClass) interpreter.globals.bindings().get("Point");
+        Scripts.run(interpreter, "\n\nclass Point { init() { this.x = 0; } }");
+        LoxClass second = (LoxClass) interpreter.globals.bindings().get("Point");
+
+        LoxMetrics metrics = new LoxMetrics();
+        metrics.instanceCreated(first);
+        metrics.instanceCreated(first);
+        metrics.instanceCreated(second);
+
+        Map<String, Long> expected = new TreeMap<>();
+        expected.put("Point:1", 2L);
+        expected.put("Point:3", 1L);
+        assertEquals(expected, metrics.getInstanceCounts());
+    }
+}
@@ -0,0 +1,91 @@
+package com.project.lox;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs spawned tasks and the parallel natives on both engines, on threads with the stack size
+ * the context asks for.
+ */
+class LoxTaskTest {
+    // Far deeper than the JVM's default stack allows without the JIT.
+    private static final String DEEP = "fun deep(n) { if (n == 0) return 0; return deep(n - 1) + 1; }\n";
+
+    private static Interpreter interpreter(boolean closures, long stackSize) {
+        Interpreter interpreter = Scripts.interpreter(closures);
+        interpreter.context.jit = false;
+        interpreter.context.stackSize = stackSize;
+        return interpreter;
+    }
+
+    @Test
+    void tasksAndCallbacksGetTheStackSize() {
+        for (boolean closures : new boolean[] {false, true}) {
+            assertEquals("8000\n8000\n8010\n", Scripts.run(interpreter(closures, 64 << 20), DEEP
+                    + "fun task() { return deep(8000); }\n"
+                    + "print spawn(task).join();\n"
+                    + "var depths = List(); depths.add(8000); depths.add(10);\n"
+                    + "print parallelMap(depths, deep).get(0);\n"
+                    + "fun add(a, b) { return a + b; }\n"
+                    + "print parallelReduce(parallelMap(depths, deep), add, 0);\n"));
+        }
+    }
+
+    @Test
+    void parallelResultsKeepTheirOrder() {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i += 2) {
+            expected.append(i * i).append('\n');
+        }
+        for (boolean closures : new boolean[] {false, true}) {
+            assertEquals(expected.toString(), Scripts.run(interpreter(closures, 0),
+                    "var numbers = List();\n"
+                    + "for (var i = 0; i < 1000; i = i + 1) numbers.add(i);\n"
+                    + "fun square(x) { return x * x; }\n"
+                    + "fun isEven(x) { var half = x / 2; var n = 0; while (n < half) n = n + 1; return n == half; }\n"
+                    + "var squares = parallelMap(parallelFilter(numbers, isEven), square);\n"
+                    + "for (var i = 0; i < squares.size(); i = i + 1) print squares.get(i);\n"));
+        }
+    }
+
+    @Test
+    void tasksShareMapsAndLists() {
+        for (boolean closures : new boolean[] {false, true}) {
+            assertEquals("8000\n8000\n0\n", Scripts.run(interpreter(closures, 0),
+                    "var map = Map();\n"
+                    + "var list = List();\n"
+                    + "fun filler(base) {\n"
+                    + "  fun fill() {\n"
+                    + "    for (var i = 0; i < 1000; i = i + 1) { map.set(base * 1000 + i, i); list.add(i); }\n"
+                    + "    for (var i = 0; i < 1000; i = i + 2) map.remove(base * 1000 + i);\n"
+                    + "    for (var i = 0; i < 1000; i = i + 2) map.set(base * 1000 + i, i);\n"
+                    + "  }\n"
+                    + "  return fill;\n"
+                    + "}\n"
+                    + "var tasks = List();\n"
+                    + "for (var t = 0; t < 8; t = t + 1) tasks.add(spawn(filler(t)));\n"
+                    + "for (var t = 0; t < 8; t = t + 1) tasks.get(t).join();\n"
+                    + "print map.size();\n"
+                    + "print list.size();\n"
+                    + "var missing = 0;\n"
+                    + "fun check(key, value) { if (map.get(key) != value) missing = missing + 1; }\n"
+                    + "map.forEach(check);\n"
+                    + "print missing;\n"));
+        }
+    }
+
+    @Test
+    void overflowInTaskIsReportedAndRemembered() {
+        for (boolean closures : new boolean[] {false, true}) {
+            Interpreter interpreter = interpreter(closures, 256 << 10);
+            assertFalse(interpreter.context.stackOverflowed);
+            LoxEngine.run(interpreter, DEEP + "fun task() { return deep(1000000); }\nprint spawn(task).join();\n");
+            assertEquals(ExecutionResult.RUNTIME_ERROR, LoxEngine.resultOf(interpreter.context));
+            assertTrue(interpreter.context.out.toString().endsWith("Stack overflow\n"), interpreter.context.out.toString());
+            assertTrue(interpreter.context.stackOverflowed);
+        }
+    }
+}
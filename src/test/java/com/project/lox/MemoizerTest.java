@@ -0,0 +1,78 @@
+package com.project.lox;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs scripts with {@code --memoize} on both engines and expects what they print without it.
+ */
+class MemoizerTest {
+    private static Interpreter interpreter(boolean closures) {
+        Interpreter interpreter = Scripts.interpreter(closures);
+        interpreter.context.memoizer = new Memoizer(100);
+        return interpreter;
+    }
+
+    @Test
+    void cachesPureCalls() {
+        for (boolean closures : new boolean[] {false, true}) {
+            assertEquals("832040\n", Scripts.run(interpreter(closures),
+                    "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n"
+                    + "print fib(30);\n"));
+        }
+    }
+
+    // As at the prompt: each line is its own script, and the second replaces what f calls.
+    @Test
+    void calleeRedefinedByLaterScript() {
+        for (boolean closures : new boolean[] {false, true}) {
+            Interpreter interpreter = interpreter(closures);
+            Scripts.run(interpreter, "fun h(x) { return x + 1; } fun f(x) { return h(x); } print f(1);");
+            Scripts.run(interpreter, "fun h(x) { return x + 100; }");
+            assertEquals("2\n101\n", Scripts.run(interpreter, "print f(1);"));
+        }
+    }
+
+    // Reached through another pure function, the redefined callee still counts.
+    @Test
+    void indirectCalleeRedefined() {
+        for (boolean closures : new boolean[] {false, true}) {
+            Interpreter interpreter = interpreter(closures);
+            Scripts.run(interpreter, "fun h(x) { return x + 1; } fun g(x) { return h(x); }\n"
+                    + "fun f(x) { return g(x) * 2; } print f(1);");
+            Scripts.run(interpreter, "fun h(x) { return x + 100; }");
+            assertEquals("4\n202\n", Scripts.run(interpreter, "print f(1);"));
+        }
+    }
+
+    // Running the same script again declares the same functions, so its results stay usable.
+    @Test
+    void sameScriptRunAgain() {
+        CompiledScript script = LoxEngine.compile("fun h(x) { return x + 1; } fun f(x) { return h(x); } print f(1);",
+                new ExecutionContext(new CaptureSink(), System.err));
+        for (boolean closures : new boolean[] {false, true}) {
+            Interpreter interpreter = interpreter(closures);
+            interpreter.interpret(script);
+            interpreter.interpret(script);
+            assertEquals("2\n2\n", interpreter.context.out.toString());
+        }
+    }
+
+    @Test
+    void calleeFromSnapshotRedefined() throws IOException {
+        Interpreter prelude = Scripts.interpreter(false);
+        Scripts.run(prelude, "fun h(x) { return x + 1; } fun f(x) { return h(x); }");
+        HeapSnapshot snapshot = HeapSnapshot.capture(prelude.globals);
+        for (boolean closures : new boolean[] {false, true}) {
+            Interpreter interpreter = interpreter(closures);
+            snapshot.restore(interpreter.globals);
+            assertEquals("2\n101\n", Scripts.run(interpreter,
+                    "print f(1);\n"
+                    + "fun h(x) { return x + 100; }\n"
+                    + "print f(1);\n"));
+        }
+    }
+}
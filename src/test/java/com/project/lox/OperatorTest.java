@@ -0,0 +1,100 @@
+package com.project.lox;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs operators on both engines and expects the values and runtime errors the language defines.
+ */
+class OperatorTest {
+    // A local that starts as a number and is reassigned by a closure is checked where it is used.
+    @Test
+    void capturedLocalChangesType() {
+        String source = "fun f() {\n"
+                + "  var n = 1;\n"
+                + "  fun set() { n = \"one\"; }\n"
+                + "  set();\n"
+                + "  return n - 1;\n"
+                + "}\n"
+                + "print f();\n";
+        for (boolean closures : new boolean[] {false, true}) {
+            assertEquals(ExecutionResult.RUNTIME_ERROR, Scripts.result(source, closures));
+        }
+    }
+
+    @Test
+    void loopAssignedLocalChangesType() {
+        String source = "fun f() {\n"
+                + "  var n = 0;\n"
+                + "  for (var i = 0; i < 3; i = i + 1) {\n"
+                + "    n = -n;\n"
+                + "    if (i == 1) n = nil;\n"
+                + "  }\n"
+                + "  return n;\n"
+                + "}\n"
+                + "print f();\n";
+        for (boolean closures : new boolean[] {false, true}) {
+            assertEquals(ExecutionResult.RUNTIME_ERROR, Scripts.result(source, closures));
+        }
+    }
+
+    @Test
+    void numericLocals() {
+        String source = "fun f() {\n"
+                + "  var n = 1;\n"
+                + "  for (var i = 0; i < 4; i = i + 1) n = n * 2 - i;\n"
+                + "  return -n / 2;\n"
+                + "}\n"
+                + "print f();\n";
+        for (boolean closures : new boolean[] {false, true}) {
+            assertEquals("-2.5\n", Scripts.run(source, closures));
+        }
+    }
+
+    @Test
+    void equalityTakesAnyValues() {
+        String source = "print \"a\" == \"a\";\n"
+                + "print \"a\" != \"b\";\n"
+                + "print nil == false;\n"
+                + "print nil == nil;\n"
+                + "print true != false;\n"
+                + "print 1 == \"1\";\n"
+                + "class A {}\n"
+                + "var a = A();\n"
+                + "print a == a;\n"
+                + "print a == A();\n";
+        for (boolean closures : new boolean[] {false, true}) {
+            assertEquals("true\ntrue\nfalse\ntrue\ntrue\nfalse\ntrue\nfalse\n", Scripts.run(source, closures));
+        }
+    }
+
+    @Test
+    void orderingStillTakesNumbers() {
+        for (boolean closures : new boolean[] {false, true}) {
+            assertEquals(ExecutionResult.RUNTIME_ERROR, Scripts.result("print \"a\" < \"b\";", closures));
+        }
+    }
+
+    // Built, literal and snapshot strings all meet the same interned object, so identity decides.
+    @Test
+    void internedStringsCompareEqual() throws IOException {
+        Interpreter prelude = Scripts.interpreter(false);
+        Scripts.run(prelude, "var saved = \"a\" + \"b\";");
+        HeapSnapshot snapshot = HeapSnapshot.capture(prelude.globals);
+        for (boolean closures : new boolean[] {false, true}) {
+            Interpreter interpreter = Scripts.interpreter(closures);
+            interpreter.context.internStrings = true;
+            snapshot.restore(interpreter.globals);
+            assertEquals("true\nfalse\ntrue\nfalse\ntrue\n", Scripts.run(interpreter,
+                    "var built = \"a\" + \"b\";\n"
+                    + "print built == \"ab\";\n"
+                    + "print built != \"ab\";\n"
+                    + "print saved == built;\n"
+                    + "print built == \"a\";\n"
+                    + "var m = Map(); m.set(built, 1); print m.has(\"a\" + \"b\");\n"));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.project.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ResolverTest {
+    private static final LoxEngine ENGINE = new LoxEngine(Runnable::run);
+
+    private static String run(String source) {
+        CaptureSink out = new CaptureSink();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(ExecutionResult.OK, ENGINE.execute(source, out, new PrintStream(err, true)), err.toString());
+        return out.toString();
+    }
+
+    private static ExecutionResult result(String source) {
+        return ENGINE.execute(source, new CaptureSink(), new PrintStream(new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void thisInSubclassMethod() {
+        assertEquals("sub of base\n", run("class Base { name() { return \"base\"; } }\n"
+                + "class Sub < Base {\n"
+                + "  describe() { return \"sub of \" + super.name(); }\n"
+                + "  show() { print this.describe(); }\n"
+                + "}\n"
+                + "Sub().show();"));
+    }
+
+    // The innermost declaration of a name wins, and the outer one is back once its block ends.
+    @Test
+    void innermostDeclarationShadows() {
+        String source = "var a = 0;\n"
+                + "{ var a = 1; { var a = 2; print a; } print a; }\n"
+                + "print a;\n"
+                + "fun f(a) { { var a = 10; a = a + 1; print a; } return a; }\n"
+                + "print f(5);\n"
+                + "{\n"
+                + "  var b = \"outer\";\n"
+                + "  fun show() { print b; }\n"
+                + "  { var b = \"inner\"; show(); print b; }\n"
+                + "}\n";
+        String expected = "2\n1\n0\n11\n5\nouter\ninner\n";
+        for (boolean closures : new boolean[] {false, true}) {
+            assertEquals(expected, Scripts.run(source, closures));
+        }
+    }
+
+    @Test
+    void redeclarationInOneScope() {
+        assertEquals(ExecutionResult.COMPILE_ERROR, result("{ var a = 1; var a = 2; }"));
+        assertEquals(ExecutionResult.OK, result("var a = 1; var a = 2;"));
+    }
+
+    @Test
+    void thisOutsideClass() {
+        assertEquals(ExecutionResult.COMPILE_ERROR, result("print this;"));
+        assertEquals(ExecutionResult.COMPILE_ERROR, result("fun f() { return this; }"));
+    }
+}
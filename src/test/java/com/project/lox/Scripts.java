@@ -0,0 +1,48 @@
+package com.project.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Runs Lox source for tests on either engine, failing the test on any compile or runtime error.
+ */
+final class Scripts {
+    private Scripts() {
+    }
+
+    /** A fresh interpreter that prints into memory and, with {@code closures}, runs as closures. */
+    static Interpreter interpreter(boolean closures) {
+        ExecutionContext context = new ExecutionContext(new CaptureSink(), System.err);
+        context.closures = closures;
+        return new Interpreter(context);
+    }
+
+    /** Runs {@code source} and returns everything {@code interpreter} has printed so far. */
+    static String run(Interpreter interpreter, String source) {
+        ExecutionContext context = interpreter.context;
+        CompiledScript script = LoxEngine.compile(source, context);
+        assertNotNull(script, "compile error");
+        interpreter.interpret(script);
+        assertEquals(ExecutionResult.OK, LoxEngine.resultOf(context));
+        return context.out.toString();
+    }
+
+    static String run(String source, boolean closures) {
+        return run(interpreter(closures), source);
+    }
+
+    /** Runs {@code source} without reporting errors and returns how it ended. */
+    static ExecutionResult result(String source, boolean closures) {
+        ExecutionContext context = new ExecutionContext(new CaptureSink(), new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+        context.closures = closures;
+        LoxEngine.run(new Interpreter(context), source);
+        return LoxEngine.resultOf(context);
+    }
+}